@@ -0,0 +1,19 @@
+package frc.robot;
+
+import edu.wpi.first.hal.HAL;
+
+/** Shared setup for benchmarks that touch WPILib classes backed by the HAL. */
+public final class BenchmarkSupport {
+
+  private static boolean initialized = false;
+
+  private BenchmarkSupport() {}
+
+  /** Initializes the simulated HAL once per benchmark JVM. */
+  public static synchronized void initialize() {
+    if (!initialized) {
+      HAL.initialize(500, 0);
+      initialized = true;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.BenchmarkSupport;
+import frc.robot.subsystems.drivebase.FakeDrivebase;
+import frc.robot.util.ReefSectorSelector;
+import frc.robot.util.ReefTargets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reef target selection, which runs once per loop in {@link Superstructure#periodic()}.
+ * Only the drivebase is needed to pick a target. The selector is also run on its own over poses
+ * and velocities all around the reef, so every sector and hysteresis branch is taken.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuperstructureBenchmark {
+
+  private static final int sampleCount = 256;
+
+  private Superstructure superstructure;
+
+  private final ReefSectorSelector selector = new ReefSectorSelector();
+  private final ReefTargets targets = ReefTargets.blue;
+  private final Pose2d[] poses = new Pose2d[sampleCount];
+  private final ChassisSpeeds[] velocities = new ChassisSpeeds[sampleCount];
+  private int sample = 0;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkSupport.initialize();
+    superstructure = new Superstructure(FakeDrivebase.create(), null, null, null, null, null);
+
+    // Poses 1-3m from the reef center, driving in random directions
+    Random random = new Random(0);
+    for (int i = 0; i < sampleCount; i++) {
+      double angle = random.nextDouble() * 2 * Math.PI;
+      double distance = 1.0 + 2.0 * random.nextDouble();
+      poses[i] =
+          new Pose2d(
+              targets.getCenterX() + distance * Math.cos(angle),
+              targets.getCenterY() + distance * Math.sin(angle),
+              Rotation2d.fromRadians(angle + Math.PI));
+      velocities[i] =
+          new ChassisSpeeds(6.0 * random.nextDouble() - 3.0, 6.0 * random.nextDouble() - 3.0, 0.0);
+    }
+  }
+
+  @Benchmark
+  public Pose2d periodic() {
+    superstructure.periodic();
+    return superstructure.getNearestReef();
+  }
+
+  @Benchmark
+  public int selectSector() {
+    int index = sample++ & (sampleCount - 1);
+    return selector.select(targets, poses[index], velocities[index]);
+  }
+}
@@ -0,0 +1,34 @@
+package frc.robot.subsystems.drivebase;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/** Builds a {@link Swerve} on fake IO for benchmarks outside the drivebase package. */
+public final class FakeDrivebase {
+
+  private FakeDrivebase() {}
+
+  /**
+   * @return A drivebase whose modules drive straight ahead at a constant speed
+   */
+  public static Swerve create() {
+    return new Swerve(
+        new FakeGyroIO(),
+        new ModuleIO[] {
+          new FakeModuleIO("FL", Rotation2d.kZero),
+          new FakeModuleIO("FR", Rotation2d.kZero),
+          new FakeModuleIO("BL", Rotation2d.kZero),
+          new FakeModuleIO("BR", Rotation2d.kZero)
+        },
+        new FakeOdometryIO(4));
+  }
+
+  /**
+   * Runs the parts of {@link Swerve#periodic()} a real robot runs: input updates and odometry.
+   *
+   * @param swerve A drivebase from {@link #create()}
+   */
+  public static void runOdometryLoop(Swerve swerve) {
+    swerve.updateInputs();
+    swerve.updateOdometry();
+  }
+}
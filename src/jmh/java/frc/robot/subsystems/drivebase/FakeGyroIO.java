@@ -0,0 +1,17 @@
+package frc.robot.subsystems.drivebase;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/** Gyro IO for benchmarks that holds a fixed heading, in step with {@link FakeOdometryIO}. */
+class FakeGyroIO implements GyroIO {
+
+  private int loop = 0;
+
+  @Override
+  public void updateInputs(GyroIOInputs inputs) {
+    loop++;
+
+    inputs.yawPosition = Rotation2d.kZero;
+    inputs.yawTimestamp = FakeOdometryIO.sampleTime(loop * FakeOdometryIO.samplesPerLoop - 1);
+  }
+}
@@ -0,0 +1,33 @@
+package frc.robot.subsystems.drivebase;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/**
+ * Module IO for benchmarks that drives straight at a constant speed, in step with {@link
+ * FakeOdometryIO}.
+ */
+class FakeModuleIO implements ModuleIO {
+
+  static final double speedMetersPerSec = 2.0;
+
+  private final String prefix;
+  private final Rotation2d angle;
+  private int loop = 0;
+
+  FakeModuleIO(String prefix, Rotation2d angle) {
+    this.prefix = prefix;
+    this.angle = angle;
+  }
+
+  @Override
+  public void updateInputs(ModuleIOInputs inputs) {
+    loop++;
+
+    inputs.prefix = prefix;
+    inputs.drivePositionMeters =
+        FakeOdometryIO.sampleTime(loop * FakeOdometryIO.samplesPerLoop - 1) * speedMetersPerSec;
+    inputs.driveVelocityMetersPerSec = speedMetersPerSec;
+    inputs.turnAbsolutePosition = angle;
+    inputs.turnPosition = angle;
+  }
+}
@@ -0,0 +1,46 @@
+package frc.robot.subsystems.drivebase;
+
+/**
+ * Odometry IO for benchmarks that reports frames the way {@link OdometryIO_Real} does, several per
+ * loop at the maximum odometry rate, with every module driving straight ahead at a constant speed.
+ */
+class FakeOdometryIO implements OdometryIO {
+
+  static final int samplesPerLoop = (int) (Swerve.maxOdometryFrequency * 0.02);
+
+  private final int moduleCount;
+  private final double[] timestamps = new double[samplesPerLoop];
+  private final double[] yawPositions = new double[samplesPerLoop];
+  private final double[] drivePositions;
+  private final double[] turnPositions;
+  private int loop = 0;
+
+  FakeOdometryIO(int moduleCount) {
+    this.moduleCount = moduleCount;
+    drivePositions = new double[samplesPerLoop * moduleCount];
+    turnPositions = new double[samplesPerLoop * moduleCount];
+  }
+
+  /**
+   * @return The timestamp of an odometry sample
+   */
+  static double sampleTime(int sample) {
+    return sample / Swerve.maxOdometryFrequency;
+  }
+
+  @Override
+  public void updateInputs(OdometryIOInputs inputs) {
+    for (int i = 0; i < samplesPerLoop; i++) {
+      timestamps[i] = sampleTime(loop * samplesPerLoop + i);
+      for (int module = 0; module < moduleCount; module++) {
+        drivePositions[i * moduleCount + module] = timestamps[i] * FakeModuleIO.speedMetersPerSec;
+      }
+    }
+    loop++;
+
+    inputs.timestamps = timestamps;
+    inputs.yawPositions = yawPositions;
+    inputs.drivePositions = drivePositions;
+    inputs.turnPositions = turnPositions;
+  }
+}
@@ -0,0 +1,116 @@
+package frc.robot.subsystems.drivebase;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.Constants;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link SwervePoseEstimator} with WPILib's {@link SwerveDrivePoseEstimator} on the same
+ * 250Hz odometry stream, for single odometry updates and for vision measurements 100ms late.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseEstimatorBenchmark {
+
+  private static final double visionLatency = 0.1; // Seconds
+
+  private final Matrix<N3, N1> stateStdDevs = VecBuilder.fill(0.6, 0.6, 0.07);
+  private final Matrix<N3, N1> visionStdDevs = VecBuilder.fill(2, 2, 1);
+
+  private SwervePoseEstimator estimator;
+  private SwerveDrivePoseEstimator wpilibEstimator;
+
+  private final SwerveModulePosition[] positions = new SwerveModulePosition[4];
+  private final Pose2d visionPose = new Pose2d(1.0, 0.1, Rotation2d.fromDegrees(2));
+  private int sample = 0;
+  private int wpilibSample = 0;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = new SwerveModulePosition(0.0, Rotation2d.fromDegrees(10));
+    }
+    estimator =
+        new SwervePoseEstimator(
+            Constants.Swerve.moduleTranslations,
+            Rotation2d.kZero,
+            positions,
+            Pose2d.kZero,
+            stateStdDevs,
+            visionStdDevs);
+    wpilibEstimator =
+        new SwerveDrivePoseEstimator(
+            new SwerveDriveKinematics(Constants.Swerve.moduleTranslations),
+            Rotation2d.kZero,
+            positions,
+            Pose2d.kZero,
+            stateStdDevs,
+            visionStdDevs);
+
+    // Fill both histories so vision lookups search a full buffer
+    int historySamples = (int) (1.5 * Swerve.maxOdometryFrequency);
+    for (int i = 0; i < historySamples; i++) {
+      updateCustom();
+      updateWpilib();
+    }
+  }
+
+  /** Advances the fake odometry stream, driving straight ahead, and returns the sample time. */
+  private double advance(int sampleIndex) {
+    double timestamp = FakeOdometryIO.sampleTime(sampleIndex);
+    for (SwerveModulePosition position : positions) {
+      position.distanceMeters = timestamp * 2.0;
+    }
+    return timestamp;
+  }
+
+  @Benchmark
+  public Pose2d updateCustom() {
+    double timestamp = advance(sample++);
+    estimator.updateWithTime(timestamp, Rotation2d.kZero, positions);
+    return estimator.getEstimatedPosition();
+  }
+
+  @Benchmark
+  public Pose2d updateWpilib() {
+    double timestamp = advance(wpilibSample++);
+    return wpilibEstimator.updateWithTime(timestamp, Rotation2d.kZero, positions);
+  }
+
+  @Benchmark
+  public Pose2d visionCustom() {
+    double timestamp = FakeOdometryIO.sampleTime(sample - 1) - visionLatency;
+    estimator.addVisionMeasurement(visionPose, timestamp, visionStdDevs);
+    return estimator.getEstimatedPosition();
+  }
+
+  @Benchmark
+  public Pose2d visionWpilib() {
+    double timestamp = FakeOdometryIO.sampleTime(wpilibSample - 1) - visionLatency;
+    wpilibEstimator.addVisionMeasurement(visionPose, timestamp, visionStdDevs);
+    return wpilibEstimator.getEstimatedPosition();
+  }
+}
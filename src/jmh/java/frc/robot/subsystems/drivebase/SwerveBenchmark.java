@@ -0,0 +1,55 @@
+package frc.robot.subsystems.drivebase;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.BenchmarkSupport;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks one loop of the drivebase: commanding speeds and integrating odometry. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SwerveBenchmark {
+
+  private Swerve swerve;
+  private final ChassisSpeeds[] speeds = new ChassisSpeeds[16]; // Varied so nothing is constant
+  private int speedIndex = 0;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkSupport.initialize();
+    swerve = FakeDrivebase.create();
+    for (int i = 0; i < speeds.length; i++) {
+      double angle = 2.0 * Math.PI * i / speeds.length;
+      speeds[i] = new ChassisSpeeds(4.0 * Math.cos(angle), 4.0 * Math.sin(angle), angle - Math.PI);
+    }
+  }
+
+  /** Discretize, inverse kinematics, desaturation and module optimization. */
+  @Benchmark
+  public void drive() {
+    swerve.drive(speeds[speedIndex]);
+    speedIndex = (speedIndex + 1) % speeds.length;
+  }
+
+  /** Input updates, odometry frames and pose estimation for one loop of 250Hz odometry. */
+  @Benchmark
+  public Pose2d odometryLoop() {
+    FakeDrivebase.runOdometryLoop(swerve);
+    return swerve.getPose();
+  }
+}
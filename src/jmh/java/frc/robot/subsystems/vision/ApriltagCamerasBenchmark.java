@@ -0,0 +1,44 @@
+package frc.robot.subsystems.vision;
+
+import frc.robot.BenchmarkSupport;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks one loop of vision filtering and logging for two cameras. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApriltagCamerasBenchmark {
+
+  private ApriltagCameras cameras;
+  private int accepted = 0;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkSupport.initialize();
+    cameras =
+        new ApriltagCameras(
+            measurements -> accepted += measurements.size(),
+            new FakeApriltagCameraIO(),
+            new FakeApriltagCameraIO());
+  }
+
+  @Benchmark
+  public int periodic() {
+    cameras.periodic();
+    return accepted;
+  }
+}
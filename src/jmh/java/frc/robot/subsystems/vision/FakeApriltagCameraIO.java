@@ -0,0 +1,43 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+
+/**
+ * Camera IO for benchmarks that reports the same results every loop: an accepted multi-tag
+ * observation, a rejected high ambiguity single-tag observation and the tags they saw.
+ */
+class FakeApriltagCameraIO implements ApriltagCameraIO {
+
+  private final PoseObservation[] observations;
+  private final int[] tagIds = {17, 18};
+  private double timestamp = 0.0;
+
+  FakeApriltagCameraIO() {
+    observations =
+        new PoseObservation[] {
+          new PoseObservation(
+              0.0, new Pose3d(3.0, 4.0, 0.0, new Rotation3d(0, 0, 1.0)), 0.0, 2, 2.5),
+          new PoseObservation(
+              0.0, new Pose3d(3.1, 4.1, 0.0, new Rotation3d(0, 0, 1.0)), 0.5, 1, 3.0)
+        };
+  }
+
+  @Override
+  public void updateInputs(ApriltagCameraIOInputs inputs) {
+    timestamp += 0.02;
+    for (int i = 0; i < observations.length; i++) {
+      PoseObservation observation = observations[i];
+      observations[i] =
+          new PoseObservation(
+              timestamp,
+              observation.pose(),
+              observation.ambiguity(),
+              observation.tagCount(),
+              observation.averageTagDistance());
+    }
+    inputs.connected = true;
+    inputs.poseObservations = observations;
+    inputs.tagIds = tagIds;
+  }
+}
@@ -0,0 +1,54 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
+import frc.robot.BenchmarkSupport;
+import frc.robot.Constants;
+import frc.robot.subsystems.drivebase.FakeDrivebase;
+import frc.robot.subsystems.drivebase.Swerve;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks one loop of {@link DriveToPose} tracking a target a few meters away. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DriveToPoseBenchmark {
+
+  private DriveToPose command;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    BenchmarkSupport.initialize();
+    Swerve swerve = FakeDrivebase.create();
+    Pose2d target = new Pose2d(3.0, 4.0, Rotation2d.fromDegrees(60));
+    command =
+        new DriveToPose(
+            swerve,
+            () -> target,
+            0.02,
+            Math.toRadians(2),
+            new Constraints(Constants.Swerve.maxLinearSpeed, 3.0),
+            new Constraints(Constants.Swerve.maxAngularSpeed, 6.0));
+    command.initialize();
+  }
+
+  @Benchmark
+  public void execute() {
+    command.execute();
+  }
+}
@@ -24,6 +24,8 @@ import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
 import edu.wpi.first.math.util.Units;
+import frc.robot.subsystems.drivebase.PhoenixOdometryThread.TimingMode;
+import frc.robot.util.TagPoseTable;
 import java.util.List;
 
 public class Constants {
@@ -139,6 +141,14 @@ public class Constants {
         new ProfiledPIDController(3.5, 0, 0, kAutoAimTranslationConstraints); // 3.5
     public static final ProfiledPIDController kThetaController_Position =
         new ProfiledPIDController(3, 0, 0, kAutoAimRotationConstraints); // 3
+
+    // Reef sector selection, leads the robot pose by its velocity
+    public static double reefLeadSpeed = 3; // Meters per second, to estimate time to arrive
+    public static double reefLeadMaxTime = 0.75; // Seconds
+    public static double reefSectorHysteresis = Units.degreesToRadians(10); // Radians past the edge
+
+    // Align to the reef with a generated trajectory instead of DriveToPose's profiles
+    public static boolean useAlignTrajectory = false;
   }
 
   public static class VisionConstants {
@@ -147,6 +157,18 @@ public class Constants {
     public static double maxAmbiguity = 0.3;
     public static double maxZError = 0.75;
 
+    // Poll and solve camera results on a worker thread per camera instead of in the main loop
+    public static boolean processOnWorkerThread = true;
+
+    // Odometry consistency gating
+    public static double maxOdometryMahalanobisSquared = 11.34; // Chi-squared, 3 DOF, 99%
+    public static double timestampUncertainty = 0.03; // Seconds, scales with robot speed
+    public static double odometryLinearStdDevFloor = 0.05; // Meters, right after a correction
+    public static double odometryAngularStdDevFloor = 0.02; // Radians, right after a correction
+    public static double odometryLinearDriftRate = 0.02; // Square meters of variance per second
+    public static double odometryAngularDriftRate = 0.005; // Square radians of variance per second
+    public static int maxConsecutiveRejections = 25; // Then accept one to let the estimate recover
+
     // Standard deviation baselines, for 1 meter distance and 1 tag
     // (Adjusted automatically based on distance and # of tags)
     public static double linearStdDevBaseline = 1; // Meters
@@ -209,6 +231,9 @@ public class Constants {
     public static final AprilTagFieldLayout kReefTagLayout =
         new AprilTagFieldLayout(kReefTags, kTagLayout.getFieldLength(), kTagLayout.getFieldWidth());
 
+    // kReefTagLayout indexed by tag ID, use this for lookups in the loop
+    public static final TagPoseTable kReefTagTable = new TagPoseTable(kReefTagLayout);
+
     public static class CameraInfo {
 
       public String cameraName;
@@ -248,8 +273,19 @@ public class Constants {
 
   public static class Swerve {
 
+    // id is the module's index in odometry frames, FL FR BL BR
     public record ModuleConstants(int id, String prefix, int driveID, int turnID, int encoderID) {}
 
+    // Pose estimator trust in odometry
+    public static final double odometryLinearStdDev = 0.6; // Meters
+    public static final double odometryAngularStdDev = 0.07; // Radians
+
+    // CAN bus the drive motors and gyro are on, a CANivore name enables synchronized odometry
+    public static final String canBus = "rio";
+
+    // How odometry samples are timestamped
+    public static final TimingMode odometryTimingMode = TimingMode.DeviceTimestamp;
+
     public static final double trackWidthX = Units.inchesToMeters(23.75);
     public static final double trackWidthY = Units.inchesToMeters(23.75);
 
@@ -263,13 +299,13 @@ public class Constants {
             0, "Front Left", CAN.Swerve_FL_D.id, CAN.Swerve_FL_T.id, CAN.Swerve_FL_E.id);
     public static final ModuleConstants frontRightModule =
         new ModuleConstants(
-            0, "Front Right", CAN.Swerve_FR_D.id, CAN.Swerve_FR_T.id, CAN.Swerve_FR_E.id);
+            1, "Front Right", CAN.Swerve_FR_D.id, CAN.Swerve_FR_T.id, CAN.Swerve_FR_E.id);
     public static final ModuleConstants backLeftModule =
         new ModuleConstants(
-            0, "Back Left", CAN.Swerve_BL_D.id, CAN.Swerve_BL_T.id, CAN.Swerve_BL_E.id);
+            2, "Back Left", CAN.Swerve_BL_D.id, CAN.Swerve_BL_T.id, CAN.Swerve_BL_E.id);
     public static final ModuleConstants backRightModule =
         new ModuleConstants(
-            0, "Back Right", CAN.Swerve_BR_D.id, CAN.Swerve_BR_T.id, CAN.Swerve_BR_E.id);
+            3, "Back Right", CAN.Swerve_BR_D.id, CAN.Swerve_BR_T.id, CAN.Swerve_BR_E.id);
     public static final double wheelRadiusMeters = Units.inchesToMeters(2);
     public static final double driveRatio = (45.0 / 15.0) * (16.0 / 28.0) * (50.0 / 14.0);
     public static final double turnRatio = (150.0 / 7.0);
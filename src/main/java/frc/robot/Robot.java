@@ -22,6 +22,9 @@ import edu.wpi.first.wpilibj2.command.button.CommandGenericHID;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import frc.robot.Constants.VisionConstants;
 import frc.robot.subsystems.Superstructure;
+import frc.robot.subsystems.Superstructure.GamePiece;
+import frc.robot.subsystems.Superstructure.ReefLevel;
+import frc.robot.subsystems.Superstructure.ReefPole;
 import frc.robot.subsystems.climber.Climber;
 import frc.robot.subsystems.climber.ClimberIO_Real;
 import frc.robot.subsystems.climber.ClimberIO_Sim;
@@ -33,6 +36,8 @@ import frc.robot.subsystems.drivebase.GyroIO_Real;
 import frc.robot.subsystems.drivebase.ModuleIO;
 import frc.robot.subsystems.drivebase.ModuleIO_Real;
 import frc.robot.subsystems.drivebase.ModuleIO_Sim;
+import frc.robot.subsystems.drivebase.OdometryIO;
+import frc.robot.subsystems.drivebase.OdometryIO_Real;
 import frc.robot.subsystems.drivebase.Swerve;
 import frc.robot.subsystems.elevator.Elevator;
 import frc.robot.subsystems.elevator.ElevatorIO_Real;
@@ -46,6 +51,11 @@ import frc.robot.subsystems.outtake.OuttakeIO_Sim;
 import frc.robot.subsystems.vision.ApriltagCameraIO_Real;
 import frc.robot.subsystems.vision.ApriltagCameraIO_Sim;
 import frc.robot.subsystems.vision.ApriltagCameras;
+import frc.robot.subsystems.vision.OdometryConsistencyFilter;
+import frc.robot.subsystems.vision.VisionStdDevModel;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.RateLimitedReceiver;
+import frc.robot.util.ReplayMetrics;
 import org.littletonrobotics.junction.LogFileUtil;
 import org.littletonrobotics.junction.LoggedRobot;
 import org.littletonrobotics.junction.Logger;
@@ -71,6 +81,11 @@ public class Robot extends LoggedRobot {
   private final Superstructure superstructure;
   private final AutoFactory autoFactory;
 
+  private final LoopProfiler.Stage robotPeriodicStage = LoopProfiler.stage("Robot/Periodic");
+  private final LoopProfiler.Stage mechanismPoseStage =
+      LoopProfiler.stage("Superstructure/Update3DPose");
+  private final LoopProfiler.Stage schedulerStage = LoopProfiler.stage("CommandScheduler/Run");
+
   private LoggedDashboardChooser<Command> autoChooser =
       new LoggedDashboardChooser<>("Auto Chooser");
 
@@ -94,17 +109,25 @@ public class Robot extends LoggedRobot {
               RobotBase.isReal()
                   ? new ModuleIO_Real(Constants.Swerve.backRightModule)
                   : new ModuleIO_Sim(Constants.Swerve.backRightModule)
-            });
+            },
+            RobotBase.isReal() ? new OdometryIO_Real() : new OdometryIO() {});
 
     cameras =
         new ApriltagCameras(
-            swerve::addVisionMeasurement,
+            swerve::addVisionMeasurements,
             RobotBase.isReal()
                 ? new ApriltagCameraIO_Real(VisionConstants.WhiteReefInfo)
                 : new ApriltagCameraIO_Sim(VisionConstants.WhiteReefInfo, swerve::getPose),
             RobotBase.isReal()
                 ? new ApriltagCameraIO_Real(VisionConstants.BlackReefInfo)
                 : new ApriltagCameraIO_Sim(VisionConstants.BlackReefInfo, swerve::getPose));
+    cameras.setStdDevModel(
+        VisionStdDevModel.loadFromDeploy(
+            VisionConstants.WhiteReefInfo.robotToCamera,
+            VisionConstants.BlackReefInfo.robotToCamera));
+    cameras.addFilter(
+        new OdometryConsistencyFilter(
+            swerve::samplePose, swerve::getVelocityFieldRelative, swerve::getPoseResetCount, 2));
 
     elevator = new Elevator(RobotBase.isReal() ? new ElevatorIO_Real() : new ElevatorIO_Sim());
     intake = new Intake(RobotBase.isReal() ? new IntakeIO_Real() : new IntakeIO_Sim());
@@ -125,15 +148,23 @@ public class Robot extends LoggedRobot {
         "Processor 3 Piece", superstructure.L4_3Piece(autoFactory, true).cmd().withTimeout(15));
   }
 
-  public static boolean replay = false;
+  // Set to true, or pass -Dfrc.robot.replay=true, to replay a log in simulation
+  public static boolean replay = Boolean.getBoolean("frc.robot.replay");
 
   @Override
   public void robotInit() {
     Logger.recordMetadata("Arborbotics 2025", "Arborbotics 2025");
 
     if (isReal()) {
-      Logger.addDataReceiver(new WPILOGWriter());
-      Logger.addDataReceiver(new NT4Publisher());
+      Logger.addDataReceiver(new WPILOGWriter()); // Every value, needed for replay
+      Logger.addDataReceiver(
+          new RateLimitedReceiver(new NT4Publisher()) // Dashboards only need changes at 10Hz
+              .limit("RealOutputs/AlignTrajectory/", 0.1)
+              .limit("RealOutputs/AutoAim/", 0.1)
+              .limit("RealOutputs/Debug/", 0.1)
+              .limit("RealOutputs/DriveToPose/", 0.1)
+              .limit("RealOutputs/Elevator/", 0.1)
+              .limit("RealOutputs/Odometry/", 0.1));
       new PowerDistribution(1, ModuleType.kRev);
     } else {
       if (!replay) {
@@ -143,6 +174,7 @@ public class Robot extends LoggedRobot {
         String logPath = LogFileUtil.findReplayLog();
         Logger.setReplaySource(new WPILOGReader(logPath));
         Logger.addDataReceiver(new WPILOGWriter(LogFileUtil.addPathSuffix(logPath, "_replay")));
+        ReplayMetrics.startIfRequested(logPath);
       }
     }
 
@@ -210,15 +242,15 @@ public class Robot extends LoggedRobot {
         .a()
         .onFalse(Commands.runOnce(() -> swerve.drive(new ChassisSpeeds())).andThen(rumble(0, 0)));
 
-    operator.button(9).onTrue(superstructure.selectElevatorHeight(2));
-    operator.button(8).onTrue(superstructure.selectElevatorHeight(3));
-    operator.button(7).onTrue(superstructure.selectElevatorHeight(4));
+    operator.button(9).onTrue(superstructure.selectElevatorHeight(ReefLevel.L2));
+    operator.button(8).onTrue(superstructure.selectElevatorHeight(ReefLevel.L3));
+    operator.button(7).onTrue(superstructure.selectElevatorHeight(ReefLevel.L4));
 
-    operator.button(2).onTrue(superstructure.selectPiece("Coral"));
-    operator.button(5).onTrue(superstructure.selectPiece("Algae"));
+    operator.button(2).onTrue(superstructure.selectPiece(GamePiece.CORAL));
+    operator.button(5).onTrue(superstructure.selectPiece(GamePiece.ALGAE));
 
-    operator.button(6).onTrue(superstructure.selectReef("Left"));
-    operator.button(3).onTrue(superstructure.selectReef("Right"));
+    operator.button(6).onTrue(superstructure.selectReef(ReefPole.LEFT));
+    operator.button(3).onTrue(superstructure.selectReef(ReefPole.RIGHT));
 
     operator.button(1).onTrue(superstructure.RaiseClimber()).onFalse(climber.setVoltage(0));
     operator.button(4).onTrue(superstructure.LowerClimber()).onFalse(climber.setVoltage(0));
@@ -242,13 +274,25 @@ public class Robot extends LoggedRobot {
     // General Score
     driver.leftTrigger().onTrue(superstructure.Score()).onFalse(superstructure.HomeRobot());
 
+    // Loop timing is meaningless when replaying, the log already has the robot's
+    LoopProfiler.setEnabled(!replay);
+    LoopProfiler.trackCommands(); // After all bindings so command timing starts after them
+
     Logger.start();
   }
 
   @Override
   public void robotPeriodic() {
+    ReplayMetrics.markLoop();
+    long periodicStart = robotPeriodicStage.start();
+    long start = mechanismPoseStage.start();
     superstructure.update3DPose();
+    mechanismPoseStage.stop(start);
+    start = schedulerStage.start();
     CommandScheduler.getInstance().run();
+    schedulerStage.stop(start);
+    robotPeriodicStage.stop(periodicStart);
+    LoopProfiler.endLoop();
   }
 
   @Override
@@ -5,9 +5,7 @@ import choreo.auto.AutoRoutine;
 import choreo.auto.AutoTrajectory;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
-import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Rotation3d;
-import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
@@ -19,22 +17,25 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.NotifierCommand;
 import edu.wpi.first.wpilibj2.command.ScheduleCommand;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
 import frc.robot.Constants;
-import frc.robot.Constants.FieldConstants.ReefSlot;
+import frc.robot.Constants.AutoConstants;
 import frc.robot.subsystems.climber.Climber;
 import frc.robot.subsystems.de_algaefier.De_algaefier;
 import frc.robot.subsystems.drivebase.Swerve;
 import frc.robot.subsystems.elevator.Elevator;
 import frc.robot.subsystems.intake.Intake;
 import frc.robot.subsystems.outtake.Outtake;
+import frc.robot.util.AlignTrajectory;
 import frc.robot.util.DriveToPose;
-import java.util.ArrayList;
-import java.util.List;
+import frc.robot.util.ReefSectorSelector;
+import frc.robot.util.ReefTargets;
+import java.util.function.Supplier;
 import org.littletonrobotics.junction.AutoLogOutput;
 import org.littletonrobotics.junction.Logger;
 
-public class Superstructure {
+public class Superstructure extends SubsystemBase {
 
   // Subsystems
   Swerve drivebase;
@@ -44,31 +45,67 @@ public class Superstructure {
   De_algaefier dealg;
   Climber climber;
 
+  public static enum GamePiece {
+    CORAL,
+    ALGAE
+  }
+
+  public static enum ReefPole {
+    LEFT,
+    RIGHT
+  }
+
+  public static enum ReefLevel {
+    L1,
+    L2,
+    L3,
+    L4
+  }
+
+  public static enum ClimbPhase {
+    IDLE,
+    CLIMBING // Past the point where the climber must not be raised again
+  }
+
   @AutoLogOutput(key = "RobotStates/Selected Reef")
-  private String selectedReef = "Left"; // Selected Reef Pole
+  private ReefPole selectedReef = ReefPole.LEFT; // Selected Reef Pole
 
   @AutoLogOutput(key = "RobotStates/Elevator Level")
-  private int elevatorLevel = 4; // Selected Reef Level
+  private ReefLevel elevatorLevel = ReefLevel.L4; // Selected Reef Level
 
   @AutoLogOutput(key = "RobotStates/Selected Piece")
-  private String selectedPiece = "Coral";
-
-  @AutoLogOutput(key = "RobotStates/climbingFlag")
-  private boolean climbingFlag = false;
-
-  // Array for easily grabbing setpoint heights.
-  private double[] elevatorSetpoints = {
-    0,
-    0,
-    Units.inchesToMeters(15.5), // L2
-    Units.inchesToMeters(31.5), // L3
-    Units.inchesToMeters(57.5), // L4
-    // Here on out is for algae
-    Units.inchesToMeters(5), // L2
-    Units.inchesToMeters(20), // L3
-    Constants.Elevator.maxHeight // L4 + Algae mode = score on barge
+  private GamePiece selectedPiece = GamePiece.CORAL;
+
+  @AutoLogOutput(key = "RobotStates/Climb Phase")
+  private ClimbPhase climbPhase = ClimbPhase.IDLE;
+
+  // Elevator setpoint heights, indexed by [GamePiece][ReefLevel].
+  private static final double[][] elevatorSetpoints = {
+    { // Coral
+      0, // L1
+      Units.inchesToMeters(15.5), // L2
+      Units.inchesToMeters(31.5), // L3
+      Units.inchesToMeters(57.5) // L4
+    },
+    { // Algae
+      0, // L1, not used
+      Units.inchesToMeters(5), // L2
+      Units.inchesToMeters(20), // L3
+      Constants.Elevator.maxHeight // L4 + Algae mode = score on barge
+    }
+  };
+
+  // Reef target for each pole, indexed by ReefPole.
+  private static final ReefTargets.Target[] poleTargets = {
+    ReefTargets.Target.LEFT, ReefTargets.Target.RIGHT
   };
 
+  private final ReefSectorSelector sectorSelector = new ReefSectorSelector();
+
+  // The sector the robot is heading for, selected once per loop so every reader sees the same one
+  private ReefTargets reefTargets = ReefTargets.forAlliance(Alliance.Blue);
+  private int nearestSector = 0;
+
   Trigger climberPastFlagThreshold =
       new Trigger(() -> climber.inputs.setpoint < Constants.ClimberConstants.secondaryMinRotations);
 
@@ -76,7 +113,7 @@ public class Superstructure {
       new Trigger(
           () ->
               climber.inputs.setpoint > Constants.ClimberConstants.secondaryMinRotations
-                  && climbingFlag);
+                  && climbPhase == ClimbPhase.CLIMBING);
 
   // Constructor
   public Superstructure(
@@ -95,11 +132,17 @@ public class Superstructure {
     // climberPastFlagThreshold.onTrue(
     //     Commands.runOnce(
     //         () -> {
-    //           climbingFlag = true;
+    //           climbPhase = ClimbPhase.CLIMBING;
     //         }));
     // climberEmergencyStop.onTrue(climber.setVoltage(0));
   }
 
+  // Registered after the drivebase, so this runs on the pose from this loop's odometry.
+  @Override
+  public void periodic() {
+    selectNearestSector();
+  }
+
   /*
    * Grab and Log the 3D positions of all robot mechanisms for 3D visualization.
    */
@@ -127,98 +170,66 @@ public class Superstructure {
   // Gets the closest reef sector to the robot.
   @AutoLogOutput(key = "RobotStates/Nearest Reef")
   public Pose2d getNearestReef() {
+    return getNearestReef(false);
+  }
 
-    // Grab the alliance color
-    Alliance alliance = DriverStation.getAlliance().orElse(Alliance.Blue);
-
-    // Create an array of reef slots based on the alliance color
-    ReefSlot[] reefSlots = new ReefSlot[6];
-
-    // Set the reef slots based on the alliance color
-    if (alliance == Alliance.Red) {
-      reefSlots =
-          new ReefSlot[] {
-            Constants.FieldConstants.ReefPoses.Reef_1.red,
-            Constants.FieldConstants.ReefPoses.Reef_2.red,
-            Constants.FieldConstants.ReefPoses.Reef_3.red,
-            Constants.FieldConstants.ReefPoses.Reef_4.red,
-            Constants.FieldConstants.ReefPoses.Reef_5.red,
-            Constants.FieldConstants.ReefPoses.Reef_6.red
-          };
-    } else {
-      reefSlots =
-          new ReefSlot[] {
-            Constants.FieldConstants.ReefPoses.Reef_1.blue,
-            Constants.FieldConstants.ReefPoses.Reef_2.blue,
-            Constants.FieldConstants.ReefPoses.Reef_3.blue,
-            Constants.FieldConstants.ReefPoses.Reef_4.blue,
-            Constants.FieldConstants.ReefPoses.Reef_5.blue,
-            Constants.FieldConstants.ReefPoses.Reef_6.blue
-          };
-    }
-
-    // Create a list of reef middle poses the robot scores offcenter but this is
-    // used instead just
-    // to select the sector.
-    List<Pose2d> reefMiddles = new ArrayList<>();
-    for (ReefSlot reefSlot : reefSlots) {
-      reefMiddles.add(reefSlot.middle);
-    }
-
-    Pose2d currentPos = drivebase.getPose(); // Get the current robot pose
-    Pose2d nearestReefMiddle = currentPos.nearest(reefMiddles); // Get the nearest reef middle pose
-    ReefSlot nearestReefSlot =
-        reefSlots[
-            reefMiddles.indexOf(
-                nearestReefMiddle)]; // Get the reef slot of the nearest reef middle pose
+  // Gets the closest reef target, backed off so the robot can line up before the final approach.
+  public Pose2d getNearestReefApproach() {
+    return getNearestReef(true);
+  }
 
+  private Pose2d getNearestReef(boolean approach) {
     // Return the reef slot based on the selected reef
-    if (selectedPiece == "Coral") {
-      if (selectedReef == "Left") {
-        return nearestReefSlot.left;
-      } else if (selectedReef == "Right") {
-        return nearestReefSlot.right;
-      }
-    } else {
-      return nearestReefSlot.algae;
-    }
+    ReefTargets.Target target =
+        selectedPiece == GamePiece.CORAL
+            ? poleTargets[selectedReef.ordinal()]
+            : ReefTargets.Target.ALGAE;
+
+    return approach
+        ? reefTargets.getApproach(target, nearestSector)
+        : reefTargets.get(target, nearestSector);
+  }
 
-    // If the selected reef is invalid return the robot's current pose.
-    Logger.recordOutput("Errors", "Invalid Reef Selected '" + selectedReef + "'");
-    return nearestReefMiddle;
+  // Selects the sector the robot is heading for with the reef targets for the alliance color. The
+  // robot scores offcenter but the middle of each sector is used to select it.
+  private void selectNearestSector() {
+    reefTargets = ReefTargets.forAlliance(DriverStation.getAlliance().orElse(Alliance.Blue));
+    nearestSector =
+        sectorSelector.select(
+            reefTargets, drivebase.getPose(), drivebase.getVelocityFieldRelative());
   }
 
   // Simple command to change the selected reef level.
-  public Command selectElevatorHeight(int height) {
-    return Commands.runOnce(() -> elevatorLevel = height)
-        .andThen(logMessage("Selected Elevator Height: " + height));
+  public Command selectElevatorHeight(ReefLevel level) {
+    return Commands.runOnce(() -> elevatorLevel = level)
+        .andThen(logMessage("Selected Elevator Height: " + level));
   }
 
   // Simple command to change the selected reef pole.
-  public Command selectReef(String reef) {
+  public Command selectReef(ReefPole reef) {
     return Commands.runOnce(() -> this.selectedReef = reef)
         .andThen(logMessage("Selected Reef: " + reef));
   }
 
   // Select Coral Mode
-  public Command selectPiece(String piece) {
+  public Command selectPiece(GamePiece piece) {
     return Commands.runOnce(() -> selectedPiece = piece)
         .andThen(logMessage("Selected Piece: " + piece))
         .andThen(
             Commands.either(
                 dealg.changeSetpoint(Units.degreesToRotations(10)),
                 /*dealg.changeSetpoint(Constants.De_algaefier.maxAngle)*/ Commands.none(),
-                () -> selectedPiece == "Coral"));
+                () -> selectedPiece == GamePiece.CORAL));
   }
 
   // Change Elevator Setpoint to the selected reef level.
   public Command raiseElevator() {
     return elevator
-        .changeSetpoint(() -> elevatorSetpoints[elevatorLevel + (selectedPiece == "Coral" ? 0 : 3)])
+        .changeSetpoint(() -> elevatorSetpoints[selectedPiece.ordinal()][elevatorLevel.ordinal()])
         .andThen(
             logMessage(
                     "Elevator Setpoint Changed To: "
-                        + elevatorSetpoints[elevatorLevel]
+                        + elevatorSetpoints[GamePiece.CORAL.ordinal()][elevatorLevel.ordinal()]
                         + " Reef Level: "
                         + elevatorLevel)
                 .andThen(
@@ -227,7 +238,7 @@ public class Superstructure {
                             .changeSetpoint(Units.degreesToRotations(30))
                             .beforeStarting(Commands.waitUntil(elevator::atSetpoint)),
                         Commands.none(),
-                        () -> selectedPiece == "Algae" && elevatorLevel == 4)));
+                        () -> selectedPiece == GamePiece.ALGAE && elevatorLevel == ReefLevel.L4)));
   }
 
   public Command ElevatorIntake() {
@@ -251,14 +262,14 @@ public class Superstructure {
             dealg.changeSetpoint(Constants.De_algaefier.maxAngle),
             Commands.waitSeconds(0.2),
             outtake.changeRollerSetpoint(-0.7)),
-        () -> selectedPiece == "Coral");
+        () -> selectedPiece == GamePiece.CORAL);
   }
 
   public Command PassiveElevatorIntake() {
     return Commands.either(
         outtake.changeRollerSetpoint(0),
         outtake.changeRollerSetpoint(-0.15),
-        () -> selectedPiece == "Coral");
+        () -> selectedPiece == GamePiece.CORAL);
   }
 
   // Command for intaking game pieces from the ground
@@ -272,7 +283,7 @@ public class Superstructure {
             logMessage("Ground Intake | Algae"),
             intake.changePivotSetpoint(Units.degreesToRadians(65)),
             intake.changeRollerSpeed(Constants.Intake.kGroundIntakeSpeed)),
-        () -> selectedPiece == "Coral");
+        () -> selectedPiece == GamePiece.CORAL);
   }
 
   // Retracts the intake, while keeping a grip on the game piece
@@ -286,7 +297,7 @@ public class Superstructure {
             logMessage("Retract Intake | Algae"),
             intake.changePivotSetpoint(Constants.Intake.minAngle),
             intake.changeRollerSpeed(Constants.Intake.kFeedSpeed)),
-        () -> selectedPiece == "Coral");
+        () -> selectedPiece == GamePiece.CORAL);
   }
 
   // Scores a piece out of the ground intake.
@@ -300,7 +311,7 @@ public class Superstructure {
                 logMessage("Ground Intake Score | Algae"),
                 intake.changePivotSetpoint(Constants.Intake.algaeScoreAngle),
                 intake.changeRollerSpeed(-Constants.Intake.kGroundIntakeSpeed)),
-            () -> selectedPiece == "Coral")
+            () -> selectedPiece == GamePiece.CORAL)
         .andThen(
             Commands.sequence(
                 Commands.waitSeconds(1.0),
@@ -323,7 +334,7 @@ public class Superstructure {
             outtake.changeRollerSetpoint(1.0),
             Commands.waitSeconds(0.5),
             outtake.changeRollerSetpoint(0)),
-        () -> selectedPiece == "Coral");
+        () -> selectedPiece == GamePiece.CORAL);
   }
 
   // Scores a piece.
@@ -351,7 +362,7 @@ public class Superstructure {
             climber.setVoltage(0),
             climber.setVoltage(6),
             () ->
-                climbingFlag
+                climbPhase == ClimbPhase.CLIMBING
                     && climber.inputs.setpoint
                         > Constants.ClimberConstants.secondaryMinRotations + 5),
         logMessage("Lowering Climber"),
@@ -369,13 +380,13 @@ public class Superstructure {
         Commands.either(
             dealg.changeSetpoint(Constants.De_algaefier.minAngle),
             dealg.changeSetpoint(Constants.De_algaefier.maxAngle),
-            () -> selectedPiece == "Coral"));
+            () -> selectedPiece == GamePiece.CORAL));
   }
 
   /** Auto aim wrapper command. Used to select level and pole side before auto aiming. */
-  public Command AutoAim(int coralLevel, String reefPole, boolean lead) {
+  public Command AutoAim(ReefLevel coralLevel, ReefPole reefPole, boolean lead) {
     return Commands.sequence(
-        selectPiece("Coral"),
+        selectPiece(GamePiece.CORAL),
         selectElevatorHeight(coralLevel),
         selectReef(reefPole),
         AutoAim(lead));
@@ -389,30 +400,27 @@ public class Superstructure {
    */
   public Command AutoAim(boolean lead) {
     return Commands.sequence(
+        // Pick the sector fresh, without hysteresis from the last one aimed at
+        Commands.runOnce(
+            () -> {
+              sectorSelector.reset();
+              selectNearestSector();
+            }),
         // Select Elevator Height If In Algae Mode
         Commands.sequence(
                 Commands.either(
-                    selectElevatorHeight(2),
-                    selectElevatorHeight(3),
-                    () -> {
-                      Pose2d nearestReef = getNearestReef();
-                      return nearestReef == Constants.FieldConstants.ReefPoses.Reef_1.blue.algae
-                          || nearestReef == Constants.FieldConstants.ReefPoses.Reef_3.blue.algae
-                          || nearestReef == Constants.FieldConstants.ReefPoses.Reef_5.blue.algae
-                          || nearestReef == Constants.FieldConstants.ReefPoses.Reef_2.red.algae
-                          || nearestReef == Constants.FieldConstants.ReefPoses.Reef_4.red.algae
-                          || nearestReef == Constants.FieldConstants.ReefPoses.Reef_6.red.algae;
-                    }),
+                    selectElevatorHeight(ReefLevel.L2),
+                    selectElevatorHeight(ReefLevel.L3),
+                    () -> reefTargets.isLowAlgae(nearestSector)),
                 ElevatorIntake())
-            .onlyIf(() -> selectedPiece == "Algae"),
+            .onlyIf(() -> selectedPiece == GamePiece.ALGAE),
         // Reset Auto Aim PID to reset the rate limiter
         // drivebase.resetAutoAimPID(),
         // Drive towards the pose with a larger tolerance
         // While raising the elevator.
         Commands.parallel(
-                new DriveToPose(
-                        drivebase,
-                        () -> getNearestReef().plus(new Transform2d(0.25, 0, new Rotation2d())),
+                driveToPose(
+                        this::getNearestReefApproach,
                         Units.inchesToMeters(12),
                         Units.degreesToRadians(5),
                         new Constraints(3, 2),
@@ -438,8 +446,7 @@ public class Superstructure {
                 // Rotation2d())),
                 //     new Constraints(3, 3),
                 //     new Constraints(Units.rotationsToRadians(2), Units.rotationsToRadians(4)))
-                new DriveToPose(
-                    drivebase,
+                driveToPose(
                     this::getNearestReef,
                     Units.inchesToMeters(0.5),
                     Units.degreesToRadians(1),
@@ -447,6 +454,15 @@ public class Superstructure {
                     new Constraints(Units.rotationsToRadians(1), Units.rotationsToRadians(2)))));
   }
 
+  /** Drives to the pose with the alignment engine selected by {@link AutoConstants}. */
+  private Command driveToPose(
+      Supplier<Pose2d> target, double tTol, double rTol, Constraints tCon, Constraints rCon) {
+    if (AutoConstants.useAlignTrajectory) {
+      return new AlignTrajectory(drivebase, target, tTol, rTol, tCon, rCon);
+    }
+    return new DriveToPose(drivebase, target, tTol, rTol, tCon, rCon);
+  }
+
   // public Command ReefLineUp() {
   //   return Commands.sequence(
   //       drivebase.goToPoseFine(
@@ -494,10 +510,10 @@ public class Superstructure {
     return routine;
   }
 
-  public Command AutonomousScoringSequence(int level, String reef) {
+  public Command AutonomousScoringSequence(ReefLevel level, ReefPole reef) {
     return Commands.sequence(
         // Commands.runOnce(() -> drivebase.drive(new ChassisSpeeds()), drivebase),
-        AutoAim(4, reef, true),
+        AutoAim(level, reef, true),
         Commands.waitUntil(elevator::atSetpoint),
         Score(),
         drivebase.driveVelocity(() -> new ChassisSpeeds(0.5, 0, 0)).withTimeout(0.125),
@@ -513,11 +529,11 @@ public class Superstructure {
 
     Command Start =
         Commands.sequence(
-                AutonomousScoringSequence(4, "Right"),
-                selectPiece("Algae"),
+                AutonomousScoringSequence(ReefLevel.L4, ReefPole.RIGHT),
+                selectPiece(GamePiece.ALGAE),
                 drivebase.driveRR(() -> new ChassisSpeeds(0.4, 0, 0)).withTimeout(1.1),
                 drivebase.driveRR(() -> new ChassisSpeeds(0, 0, 0)).withTimeout(0.01),
-                selectElevatorHeight(2),
+                selectElevatorHeight(ReefLevel.L2),
                 AutoAim(true),
                 ElevatorIntake(),
                 // new ScheduleCommand(P1_Algae.cmd())
@@ -552,7 +568,8 @@ public class Superstructure {
     S_P1.atTimeBeforeEnd(0.9)
         .onTrue(
             Commands.sequence(
-                    AutonomousScoringSequence(4, mirror ? "Left" : "Right"),
+                    AutonomousScoringSequence(
+                        ReefLevel.L4, mirror ? ReefPole.LEFT : ReefPole.RIGHT),
                     new ScheduleCommand(P1_I1.cmd()))
                 .asProxy());
 
@@ -570,7 +587,8 @@ public class Superstructure {
         .atTimeBeforeEnd(1.2)
         .onTrue(
             Commands.sequence(
-                    AutonomousScoringSequence(4, mirror ? "Right" : "Left"),
+                    AutonomousScoringSequence(
+                        ReefLevel.L4, mirror ? ReefPole.RIGHT : ReefPole.LEFT),
                     new ScheduleCommand(P2_I2.cmd()))
                 .asProxy());
 
@@ -586,7 +604,9 @@ public class Superstructure {
 
     I2_P3
         .atTimeBeforeEnd(1.2)
-        .onTrue(AutonomousScoringSequence(4, mirror ? "Left" : "Right").asProxy());
+        .onTrue(
+            AutonomousScoringSequence(ReefLevel.L4, mirror ? ReefPole.LEFT : ReefPole.RIGHT)
+                .asProxy());
 
     routine.active().onTrue(Commands.sequence(S_P1.resetOdometry(), S_P1.cmd()));
 
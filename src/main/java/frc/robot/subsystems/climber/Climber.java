@@ -8,6 +8,7 @@ import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.Logger;
 
 public class Climber extends SubsystemBase {
@@ -15,14 +16,24 @@ public class Climber extends SubsystemBase {
   public final ClimberIO io;
   public final ClimberIOInputsAutoLogged inputs = new ClimberIOInputsAutoLogged();
 
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("Climber/Periodic");
+  private final LoopProfiler.Stage inputsStage = LoopProfiler.stage("Climber/UpdateInputs");
+  private final LoopProfiler.Stage logStage = LoopProfiler.stage("Climber/ProcessInputs");
+
   public Climber(ClimberIO io) {
     this.io = io;
   }
 
   @Override
   public void periodic() {
+    long periodicStart = periodicStage.start();
+    long start = inputsStage.start();
     io.updateInputs(inputs);
+    inputsStage.stop(start);
+    start = logStage.start();
     Logger.processInputs("Climber", inputs);
+    logStage.stop(start);
+    periodicStage.stop(periodicStart);
   }
 
   /**
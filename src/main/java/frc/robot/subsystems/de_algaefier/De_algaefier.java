@@ -2,6 +2,7 @@ package frc.robot.subsystems.de_algaefier;
 
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.Logger;
 
 public class De_algaefier extends SubsystemBase {
@@ -9,6 +10,10 @@ public class De_algaefier extends SubsystemBase {
   private final De_algaefierIO io;
   private final De_algaefierIOInputsAutoLogged inputs = new De_algaefierIOInputsAutoLogged();
 
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("Dealg/Periodic");
+  private final LoopProfiler.Stage inputsStage = LoopProfiler.stage("Dealg/UpdateInputs");
+  private final LoopProfiler.Stage logStage = LoopProfiler.stage("Dealg/ProcessInputs");
+
   public De_algaefier(De_algaefierIO io) {
     this.io = io;
   }
@@ -23,7 +28,13 @@ public class De_algaefier extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long periodicStart = periodicStage.start();
+    long start = inputsStage.start();
     io.updateInputs(inputs);
+    inputsStage.stop(start);
+    start = logStage.start();
     Logger.processInputs("Dealg", inputs);
+    logStage.stop(start);
+    periodicStage.stop(periodicStart);
   }
 }
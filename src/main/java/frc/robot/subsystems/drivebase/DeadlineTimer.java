@@ -0,0 +1,82 @@
+package frc.robot.subsystems.drivebase;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits for absolute, evenly spaced deadlines instead of sleeping a fixed time after each cycle.
+ *
+ * <p>Each deadline is the previous one plus the period, so the time spent working between waits
+ * and any rounding of the period do not accumulate as drift. If the caller falls more than a full
+ * period behind, the schedule is re-anchored to the current time and every skipped deadline is
+ * counted, rather than firing a burst of back-to-back cycles.
+ *
+ * <p>How late each wake-up is relative to its deadline is recorded in a histogram that other
+ * threads may read.
+ */
+class DeadlineTimer {
+
+  /** Upper bounds of the wake lateness histogram buckets, the last bucket is unbounded. */
+  static final double[] latenessBucketLimits = {50e-6, 100e-6, 200e-6, 500e-6, 1e-3, 2e-3, 5e-3};
+
+  private final AtomicLongArray latenessHistogram =
+      new AtomicLongArray(latenessBucketLimits.length + 1);
+  private volatile long missedDeadlines = 0;
+
+  private long nextDeadline = 0; // System.nanoTime() base, owning thread only
+  private long periodNanos = 0;
+
+  /**
+   * Blocks until the next deadline. Owning thread only.
+   *
+   * @param frequency The cycle rate in Hz, the schedule restarts when it changes
+   */
+  void waitForNext(double frequency) {
+    long period = Math.round(1e9 / frequency);
+    long now = System.nanoTime();
+    if (period != periodNanos || nextDeadline == 0) {
+      periodNanos = period;
+      nextDeadline = now + period;
+    } else {
+      nextDeadline += period;
+      if (now - nextDeadline > period) {
+        // Every deadline from this one up to now has passed
+        missedDeadlines += (now - nextDeadline) / period + 1;
+        nextDeadline = now + period;
+      }
+    }
+
+    long remaining;
+    while ((remaining = nextDeadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+    }
+
+    recordLateness((System.nanoTime() - nextDeadline) / 1e9);
+  }
+
+  private void recordLateness(double lateness) {
+    int bucket = 0;
+    while (bucket < latenessBucketLimits.length && lateness > latenessBucketLimits[bucket]) {
+      bucket++;
+    }
+    latenessHistogram.incrementAndGet(bucket);
+  }
+
+  /**
+   * @return A copy of the number of wake-ups in each lateness bucket
+   */
+  long[] getLatenessHistogram() {
+    long[] counts = new long[latenessHistogram.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = latenessHistogram.get(i);
+    }
+    return counts;
+  }
+
+  /**
+   * @return The number of deadlines skipped because a cycle overran a full period
+   */
+  long getMissedDeadlines() {
+    return missedDeadlines;
+  }
+}
@@ -11,8 +11,6 @@ public interface GyroIO {
     public double yaw = 0.0;
     public double yawVelocityRadPerSec = 0.0;
     public double yawTimestamp = 0.0; // Timestamp of the latest yaw reading
-    public double[] yawTimestamps = new double[] {};
-    public Rotation2d[] yawPositions = new Rotation2d[] {};
   }
 
   public default void updateInputs(GyroIOInputs inputs) {}
@@ -9,8 +9,8 @@ import com.ctre.phoenix6.hardware.Pigeon2;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.units.measure.Angle;
 import edu.wpi.first.units.measure.AngularVelocity;
+import frc.robot.Constants;
 import frc.robot.Constants.CAN;
-import java.util.Queue;
 
 public class GyroIO_Real implements GyroIO {
 
@@ -18,12 +18,9 @@ public class GyroIO_Real implements GyroIO {
   private final StatusSignal<Angle> yaw; // Yaw
   private final StatusSignal<AngularVelocity> yawVelocity; // Pitch
 
-  private final Queue<Double> yawPositionQueue;
-  private final Queue<Double> yawTimestampQueue;
-
   public GyroIO_Real() {
 
-    gyro = new Pigeon2(CAN.Gyro.id); // Assign CAN ID to Gyro
+    gyro = new Pigeon2(CAN.Gyro.id, Constants.Swerve.canBus); // Assign CAN ID to Gyro
 
     // Seed status signals
     yaw = gyro.getYaw();
@@ -37,8 +34,7 @@ public class GyroIO_Real implements GyroIO {
 
     gyro.optimizeBusUtilization(); // Turn down all other status frames we dont use
 
-    yawTimestampQueue = PhoenixOdometryThread.getInstance().makeTimestampQueue();
-    yawPositionQueue = PhoenixOdometryThread.getInstance().registerSignal(gyro.getYaw());
+    PhoenixOdometryThread.getInstance().registerYaw(gyro.getYaw());
   }
 
   @Override
@@ -51,15 +47,6 @@ public class GyroIO_Real implements GyroIO {
     inputs.yaw = yaw.getValueAsDouble(); // Raw Yaw
     inputs.yawVelocityRadPerSec = yawVelocity.getValue().in(RadiansPerSecond); // Yaw Velocity
     inputs.yawTimestamp = yaw.getTimestamp().getTime();
-
-    inputs.yawTimestamps =
-        yawTimestampQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.yawPositions =
-        yawPositionQueue.stream()
-            .map((Double value) -> Rotation2d.fromDegrees(value))
-            .toArray(Rotation2d[]::new);
-    yawTimestampQueue.clear();
-    yawPositionQueue.clear();
   }
 
   /** Set the yaw of the gyro */
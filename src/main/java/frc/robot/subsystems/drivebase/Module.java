@@ -2,6 +2,7 @@ package frc.robot.subsystems.drivebase;
 
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.Logger;
 
 public class Module {
@@ -10,7 +11,14 @@ public class Module {
   private ModuleIO io;
   private ModuleIOInputsAutoLogged inputs = new ModuleIOInputsAutoLogged();
 
-  private SwerveModulePosition[] odometryPositions = new SwerveModulePosition[] {};
+  // Shared by all modules, so each loop records the total over the four modules
+  private static final LoopProfiler.Stage inputsStage =
+      LoopProfiler.stage("Swerve/Module/UpdateInputs");
+  private static final LoopProfiler.Stage logStage =
+      LoopProfiler.stage("Swerve/Module/ProcessInputs");
+
+  private String logPrefix = null;
+  private String logKey = "";
 
   public Module(ModuleIO io) {
     this.io = io;
@@ -45,25 +53,16 @@ public class Module {
 
   // Update Module IO
   public void updateInputs() {
+    long start = inputsStage.start();
     io.updateInputs(inputs);
-    Logger.processInputs(
-        new StringBuilder("Swerve/").append(inputs.prefix).append(" Module").toString(), inputs);
-
-    int sampleCount = inputs.odometryTimestamps.length; // All signals are sampled together
-    odometryPositions = new SwerveModulePosition[sampleCount];
-    for (int i = 0; i < sampleCount; i++) {
-      odometryPositions[i] =
-          new SwerveModulePosition(
-              inputs.odometryDrivePositions[i], inputs.odometryTurnPositions[i]);
+    inputsStage.stop(start);
+    if (!inputs.prefix.equals(logPrefix)) { // Rebuild the key only when the prefix changes
+      logPrefix = inputs.prefix;
+      logKey = new StringBuilder("Swerve/").append(inputs.prefix).append(" Module").toString();
     }
-  }
-
-  public double[] getOdometryTimestamps() {
-    return inputs.odometryTimestamps;
-  }
-
-  public SwerveModulePosition[] getOdometryPositions() {
-    return odometryPositions;
+    start = logStage.start();
+    Logger.processInputs(logKey, inputs);
+    logStage.stop(start);
   }
 
   /** Reset the drive encoder to 0 */
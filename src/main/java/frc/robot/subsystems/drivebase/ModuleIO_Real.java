@@ -12,7 +12,6 @@ import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.RobotController;
 import frc.robot.Constants;
 import frc.robot.Constants.Swerve.ModuleConstants;
-import java.util.Queue;
 
 public class ModuleIO_Real implements ModuleIO {
 
@@ -41,17 +40,13 @@ public class ModuleIO_Real implements ModuleIO {
   private final VoltageOut driveOpenLoop = new VoltageOut(0);
   private final MotionMagicVoltage turnPID = new MotionMagicVoltage(0.0);
 
-  private final Queue<Double> timestampQueue;
-  private final Queue<Double> drivePositionQueue;
-  private final Queue<Double> turnPositionQueue;
-
   public ModuleIO_Real(ModuleConstants constants) {
 
     this.constants = constants;
 
     // Assign Hardware
-    drive = new TalonFX(constants.driveID());
-    turn = new TalonFX(constants.turnID());
+    drive = new TalonFX(constants.driveID(), Constants.Swerve.canBus);
+    turn = new TalonFX(constants.turnID(), Constants.Swerve.canBus);
     encoder = new Canandmag(constants.encoderID());
 
     // Configure Motors
@@ -103,9 +98,8 @@ public class ModuleIO_Real implements ModuleIO {
 
     turn.setPosition(encoder.getAbsPosition());
 
-    timestampQueue = PhoenixOdometryThread.getInstance().makeTimestampQueue();
-    drivePositionQueue = PhoenixOdometryThread.getInstance().registerSignal(drive.getPosition());
-    turnPositionQueue = PhoenixOdometryThread.getInstance().registerSignal(turn.getPosition());
+    PhoenixOdometryThread.getInstance()
+        .registerModule(constants.id(), drive.getPosition(), turn.getPosition());
   }
 
   @Override
@@ -137,18 +131,6 @@ public class ModuleIO_Real implements ModuleIO {
     inputs.turnVelocityRadPerSec = Units.rotationsToRadians(turnVelocity.getValueAsDouble());
     inputs.turnAppliedVolts = turnAppliedVolts.getValueAsDouble();
     inputs.turnCurrentAmps = turnCurrent.getValueAsDouble();
-
-    inputs.odometryTimestamps =
-        timestampQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.odometryDrivePositions =
-        drivePositionQueue.stream().mapToDouble((Double value) -> value).toArray();
-    inputs.odometryTurnPositions =
-        turnPositionQueue.stream()
-            .map((Double value) -> Rotation2d.fromRotations(value))
-            .toArray(Rotation2d[]::new);
-    timestampQueue.clear();
-    drivePositionQueue.clear();
-    turnPositionQueue.clear();
   }
 
   @Override
@@ -0,0 +1,126 @@
+package frc.robot.subsystems.drivebase;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free handoff of timestamped odometry frames from the odometry thread to the main loop.
+ *
+ * <p>Each frame is a timestamp followed by a fixed number of signal values. Frames live in a ring
+ * of slots guarded by per-slot sequence numbers (a seqlock), so the producer never waits on the
+ * consumer. If the main loop falls behind, the oldest frames are overwritten and counted as
+ * dropped instead of stalling sampling.
+ */
+class OdometryFrameBuffer {
+
+  private final int width; // Values per frame, not including the timestamp
+  private final int stride;
+  private final int mask;
+  private final double[] data;
+  private final AtomicLongArray sequences; // Odd while a slot is being written
+
+  private volatile long writeIndex = 0; // Producer only
+  private long readIndex = 0; // Consumer only
+  private long droppedFrames = 0; // Consumer only
+
+  /**
+   * @param width The number of signal values in each frame
+   * @param minCapacity The minimum number of frames buffered, rounded up to a power of two
+   */
+  OdometryFrameBuffer(int width, int minCapacity) {
+    int capacity = Integer.highestOneBit(Math.max(minCapacity, 2) - 1) << 1;
+    this.width = width;
+    this.stride = width + 1;
+    this.mask = capacity - 1;
+    this.data = new double[capacity * stride];
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, -1); // No frame written yet
+    }
+  }
+
+  /**
+   * Publishes a frame, overwriting the oldest frame if the buffer is full. Producer thread only.
+   *
+   * @param timestamp The sample timestamp in seconds
+   * @param values The signal values, only the first {@link #width()} entries are used
+   */
+  void publish(double timestamp, double[] values) {
+    long write = writeIndex;
+    int slot = (int) (write & mask);
+    int offset = slot * stride;
+
+    sequences.set(slot, 2 * write + 1);
+    VarHandle.storeStoreFence(); // Data writes must not move ahead of the odd sequence
+    data[offset] = timestamp;
+    System.arraycopy(values, 0, data, offset + 1, width);
+    sequences.set(slot, 2 * write + 2);
+
+    writeIndex = write + 1;
+  }
+
+  /**
+   * Copies all complete frames published since the last call, oldest first. Consumer thread only.
+   *
+   * @param timestamps Destination for the frame timestamps, its length limits the frames read
+   * @param values Destination for the frame values, indexed [signal][frame]
+   * @return The number of frames copied
+   */
+  int drainTo(double[] timestamps, double[][] values) {
+    long available = writeIndex;
+    long read = readIndex;
+
+    // Frames older than one lap of the ring have already been overwritten
+    long capacity = mask + 1;
+    if (available - read > capacity) {
+      droppedFrames += available - read - capacity;
+      read = available - capacity;
+    }
+
+    int count = 0;
+    while (read < available && count < timestamps.length) {
+      int slot = (int) (read & mask);
+      int offset = slot * stride;
+      long expected = 2 * read + 2;
+
+      if (sequences.get(slot) == expected) {
+        timestamps[count] = data[offset];
+        for (int i = 0; i < width; i++) {
+          values[i][count] = data[offset + 1 + i];
+        }
+        VarHandle.loadLoadFence(); // Data reads must complete before the sequence is rechecked
+        if (sequences.get(slot) == expected) {
+          count++;
+        } else {
+          droppedFrames++; // Overwritten while copying
+        }
+      } else {
+        droppedFrames++; // Already overwritten by a newer frame
+      }
+      read++;
+    }
+    readIndex = read;
+    return count;
+  }
+
+  /**
+   * @return The number of values in each frame, not including the timestamp
+   */
+  int width() {
+    return width;
+  }
+
+  /**
+   * @return The maximum number of frames buffered
+   */
+  int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * @return The total number of frames overwritten before the consumer read them
+   */
+  long getDroppedFrames() {
+    return droppedFrames;
+  }
+}
@@ -0,0 +1,90 @@
+package frc.robot.subsystems.drivebase;
+
+import com.ctre.phoenix6.CANBus;
+import com.ctre.phoenix6.CANBus.CANBusStatus;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.Timer;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Picks the highest odometry rate the CAN bus can sustain.
+ *
+ * <p>Once per evaluation period it reads the bus utilization and the sampling jitter measured by
+ * the {@link PhoenixOdometryThread}. The rate steps down right away when the bus is saturated or
+ * the thread cannot keep up, and only steps back up after several healthy evaluations in a row.
+ * The thread applies new rates to its Phoenix signals itself.
+ */
+class OdometryFrequencyScheduler {
+
+  private static final double evaluationPeriod = 1.0; // Seconds
+  private static final double frequencyStep = 25.0; // Hz
+  private static final double highBusUtilization = 0.8; // Step down above this
+  private static final double lowBusUtilization = 0.6; // Allow stepping up below this
+  private static final double maxJitterFraction = 0.2; // Of the target period
+  private static final double minAchievedFraction = 0.9; // Of the target rate
+  private static final int raiseEvaluations = 3; // Healthy evaluations before stepping up
+
+  private final PhoenixOdometryThread thread;
+  private final CANBus bus;
+  private final double minFrequency;
+  private final double maxFrequency;
+
+  private double lastEvaluation = 0.0;
+  private int healthyEvaluations = 0;
+
+  /**
+   * @param thread The odometry thread to schedule
+   * @param bus The bus the odometry signals are on
+   * @param minFrequency The lowest rate to fall back to, in Hz
+   * @param maxFrequency The highest rate to try, in Hz
+   */
+  OdometryFrequencyScheduler(
+      PhoenixOdometryThread thread, CANBus bus, double minFrequency, double maxFrequency) {
+    this.thread = thread;
+    this.bus = bus;
+    this.minFrequency = minFrequency;
+    this.maxFrequency = maxFrequency;
+  }
+
+  /** Re-evaluates the odometry rate if an evaluation period has passed. Call every loop. */
+  void update() {
+    double now = Timer.getTimestamp();
+    if (now - lastEvaluation < evaluationPeriod) {
+      return;
+    }
+    lastEvaluation = now;
+
+    CANBusStatus status = bus.getStatus();
+    double busUtilization = status.Status.isOK() ? status.BusUtilization : 1.0;
+    double frequency = thread.getFrequency();
+    double jitterFraction = thread.getPeriodJitter() * frequency;
+    double achievedFraction = thread.getMeasuredFrequency() / frequency;
+
+    boolean overloaded =
+        busUtilization > highBusUtilization
+            || jitterFraction > maxJitterFraction
+            || achievedFraction < minAchievedFraction;
+    boolean healthy =
+        busUtilization < lowBusUtilization && jitterFraction < maxJitterFraction / 2.0;
+
+    double newFrequency = frequency;
+    if (overloaded) {
+      healthyEvaluations = 0;
+      newFrequency = frequency - frequencyStep;
+    } else if (healthy && ++healthyEvaluations >= raiseEvaluations) {
+      healthyEvaluations = 0;
+      newFrequency = frequency + frequencyStep;
+    } else if (!healthy) {
+      healthyEvaluations = 0;
+    }
+    newFrequency = MathUtil.clamp(newFrequency, minFrequency, maxFrequency);
+    if (newFrequency != frequency) {
+      thread.requestFrequency(newFrequency);
+    }
+
+    Logger.recordOutput("Odometry/Scheduler/BusUtilization", busUtilization);
+    Logger.recordOutput("Odometry/Scheduler/JitterFraction", jitterFraction);
+    Logger.recordOutput("Odometry/Scheduler/AchievedFraction", achievedFraction);
+    Logger.recordOutput("Odometry/Scheduler/TargetFrequency", newFrequency);
+  }
+}
@@ -0,0 +1,21 @@
+package frc.robot.subsystems.drivebase;
+
+import org.littletonrobotics.junction.AutoLog;
+
+public interface OdometryIO {
+
+  /**
+   * The high-frequency odometry frames received since the last loop. Every frame is one timestamp
+   * with the gyro yaw and every module's positions, all sampled together, so entry i of each array
+   * belongs to frame i.
+   */
+  @AutoLog
+  public static class OdometryIOInputs {
+    public double[] timestamps = new double[] {}; // Seconds, FPGA time base
+    public double[] yawPositions = new double[] {}; // Degrees
+    public double[] drivePositions = new double[] {}; // Meters, frame major, FL FR BL BR
+    public double[] turnPositions = new double[] {}; // Rotations, frame major, FL FR BL BR
+  }
+
+  public default void updateInputs(OdometryIOInputs inputs) {}
+}
@@ -0,0 +1,35 @@
+package frc.robot.subsystems.drivebase;
+
+import static frc.robot.subsystems.drivebase.PhoenixOdometryThread.moduleCount;
+
+import java.util.Arrays;
+
+/** Drains the frames sampled by the {@link PhoenixOdometryThread}. */
+public class OdometryIO_Real implements OdometryIO {
+
+  private final PhoenixOdometryThread thread = PhoenixOdometryThread.getInstance();
+
+  // Reused buffers the frames are drained into each loop, indexed [column][frame]
+  private final double[] timestamps = new double[PhoenixOdometryThread.frameCapacity];
+  private final double[][] values =
+      new double[PhoenixOdometryThread.frameWidth][PhoenixOdometryThread.frameCapacity];
+
+  @Override
+  public void updateInputs(OdometryIOInputs inputs) {
+    int count = thread.drainTo(timestamps, values);
+
+    // The inputs get fresh arrays since AdvantageKit keeps references
+    inputs.timestamps = Arrays.copyOf(timestamps, count);
+    inputs.yawPositions = Arrays.copyOf(values[PhoenixOdometryThread.yawColumn], count);
+    inputs.drivePositions = new double[count * moduleCount];
+    inputs.turnPositions = new double[count * moduleCount];
+    for (int frame = 0; frame < count; frame++) {
+      for (int module = 0; module < moduleCount; module++) {
+        inputs.drivePositions[frame * moduleCount + module] =
+            values[PhoenixOdometryThread.driveColumn(module)][frame];
+        inputs.turnPositions[frame * moduleCount + module] =
+            values[PhoenixOdometryThread.turnColumn(module)][frame];
+      }
+    }
+  }
+}
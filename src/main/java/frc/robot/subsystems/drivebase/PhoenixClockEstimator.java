@@ -0,0 +1,65 @@
+package frc.robot.subsystems.drivebase;
+
+/**
+ * Online estimate of the offset between the Phoenix time base (used by status signal timestamps)
+ * and the FPGA time base (used by the pose estimator and vision).
+ *
+ * <p>Each sample brackets a Phoenix clock read between two FPGA clock reads. The midpoint gives an
+ * offset sample, and the bracket width bounds its error. The estimate starts from the tightest of
+ * the first few samples, so one preempted read cannot skew it, and after that samples with a tight
+ * bracket are low-pass filtered so the estimate tracks slow drift without picking up scheduling
+ * noise.
+ */
+class PhoenixClockEstimator {
+
+  private static final double maxBracketSeconds = 100e-6; // Reject preempted reads
+  private static final double filterGain = 0.02; // Per accepted sample
+  private static final int seedSamples = 10; // Tightest of these sets the initial offset
+
+  private int seedCount = 0;
+  private double seedBracket = Double.POSITIVE_INFINITY;
+  private double offsetSeconds = 0.0; // FPGA time minus Phoenix time
+
+  /**
+   * Adds an offset sample.
+   *
+   * @param fpgaBefore FPGA time read just before the Phoenix clock, in seconds
+   * @param phoenixTime Phoenix time, in seconds
+   * @param fpgaAfter FPGA time read just after the Phoenix clock, in seconds
+   */
+  void addSample(double fpgaBefore, double phoenixTime, double fpgaAfter) {
+    double bracket = fpgaAfter - fpgaBefore;
+    double sample = 0.5 * (fpgaBefore + fpgaAfter) - phoenixTime;
+    if (seedCount < seedSamples) {
+      seedCount++;
+      if (bracket < seedBracket) {
+        seedBracket = bracket;
+        offsetSeconds = sample;
+      }
+    } else if (bracket <= maxBracketSeconds) {
+      offsetSeconds += filterGain * (sample - offsetSeconds);
+    }
+  }
+
+  /**
+   * @return True once at least one sample has been added
+   */
+  boolean isInitialized() {
+    return seedCount > 0;
+  }
+
+  /**
+   * @return The estimated FPGA time minus Phoenix time, in seconds
+   */
+  double getOffset() {
+    return offsetSeconds;
+  }
+
+  /**
+   * @param phoenixTime A time in the Phoenix time base, in seconds
+   * @return The same instant in the FPGA time base, in seconds
+   */
+  double toFPGATime(double phoenixTime) {
+    return phoenixTime + offsetSeconds;
+  }
+}
@@ -15,32 +15,67 @@ package frc.robot.subsystems.drivebase;
 
 import com.ctre.phoenix6.BaseStatusSignal;
 import com.ctre.phoenix6.StatusSignal;
+import com.ctre.phoenix6.Timestamp;
+import com.ctre.phoenix6.Utils;
 import edu.wpi.first.units.measure.Angle;
 import edu.wpi.first.wpilibj.RobotController;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.DoubleSupplier;
+import frc.robot.Constants;
 
 /**
- * Provides an interface for asynchronously reading high-frequency measurements to a set of queues.
+ * Provides an interface for asynchronously reading high-frequency odometry measurements, so
+ * sampling does not box or allocate.
  *
  * <p>This version is intended for Phoenix 6 devices on the RIO and CANivore bus. When using a
  * CANivore, the thread uses the "waitForAll" blocking method to enable more consistent sampling.
  * This also allows Phoenix Pro users to benefit from lower latency between devices using CANivore
  * time synchronization.
+ *
+ * <p>The thread never takes a lock shared with the main loop. Each sample of every signal is
+ * published as one timestamped frame through an {@link OdometryFrameBuffer}, and {@link
+ * OdometryIO_Real} drains whole frames from the main loop. Every frame has the same layout: the
+ * gyro yaw, then the drive and turn positions of each module, see {@link #driveColumn(int)}.
  */
 public class PhoenixOdometryThread extends Thread {
-  private final Lock signalsLock =
-      new ReentrantLock(); // Prevents conflicts when registering signals
-  private BaseStatusSignal[] phoenixSignals = new BaseStatusSignal[0];
-  private final List<DoubleSupplier> genericSignals = new ArrayList<>();
-  private final List<Queue<Double>> phoenixQueues = new ArrayList<>();
-  private final List<Queue<Double>> genericQueues = new ArrayList<>();
-  private final List<Queue<Double>> timestampQueues = new ArrayList<>();
+
+  /** How each frame's timestamp is derived. */
+  public static enum TimingMode {
+    /** FPGA time at the end of the wait minus the average latency of all signals. */
+    AverageLatency,
+    /**
+     * The mean of each signal's own best timestamp (device, CANivore or system, whichever Phoenix
+     * provides), mapped into the FPGA time base with an online clock offset estimate.
+     */
+    DeviceTimestamp
+  }
+
+  static final int moduleCount = 4; // FL FR BL BR
+  static final int yawColumn = 0; // Degrees
+  static final int frameWidth = 1 + 2 * moduleCount;
+
+  /** Frames buffered before the oldest are overwritten, 200ms at the maximum rate. */
+  static final int frameCapacity =
+      Integer.highestOneBit((int) (Swerve.maxOdometryFrequency * 0.2) - 1) << 1;
+
+  // Indexed by frame column, null until registered
+  private final BaseStatusSignal[] phoenixSignals = new BaseStatusSignal[frameWidth];
+  private int registeredSignals = 0;
+
+  // Created on start, once the set of signals is fixed
+  private OdometryFrameBuffer frameBuffer = null;
+  private final double[] frame = new double[frameWidth]; // Odometry thread only
+
+  private final PhoenixClockEstimator clock = new PhoenixClockEstimator(); // Odometry thread only
+  private volatile double clockOffset = 0.0;
+  private volatile double timestampSpread = 0.0;
+
+  // Sampling rate, changed live by the OdometryFrequencyScheduler
+  private volatile double frequency = Swerve.odometryFrequency;
+  private volatile double requestedFrequency = Swerve.odometryFrequency;
+  private volatile double measuredFrequency = Swerve.odometryFrequency;
+  private volatile double periodJitter = 0.0;
+  private double lastFrameTime = 0.0; // Odometry thread only
+  private final DeadlineTimer deadlineTimer = new DeadlineTimer(); // Non CAN FD buses only
+  private static final double periodFilterGain = 0.05;
 
   private static boolean isCANFD = false;
   private static PhoenixOdometryThread instance = null;
@@ -59,105 +94,233 @@ public class PhoenixOdometryThread extends Thread {
 
   @Override
   public void start() {
-    if (timestampQueues.size() > 0) {
-      super.start();
-    }
+    start(false);
   }
 
-  /** Registers a Phoenix signal to be read from the thread. */
-  public Queue<Double> registerSignal(StatusSignal<Angle> signal) {
-    Queue<Double> queue = new ArrayBlockingQueue<>(20);
-    signalsLock.lock();
-    Swerve.odometryLock.lock();
-    try {
-      BaseStatusSignal[] newSignals = new BaseStatusSignal[phoenixSignals.length + 1];
-      System.arraycopy(phoenixSignals, 0, newSignals, 0, phoenixSignals.length);
-      newSignals[phoenixSignals.length] = signal;
-      phoenixSignals = newSignals;
-      phoenixQueues.add(queue);
-    } finally {
-      signalsLock.unlock();
-      Swerve.odometryLock.unlock();
+  /**
+   * Starts sampling, if any signals were registered.
+   *
+   * @param canFD True if the odometry signals are on a CAN FD bus, enabling "waitForAll"
+   */
+  public void start(boolean canFD) {
+    if (registeredSignals == 0) {
+      return; // Simulation or replay, nothing to sample
     }
-    return queue;
-  }
-
-  /** Registers a generic signal to be read from the thread. */
-  public Queue<Double> registerSignal(DoubleSupplier signal) {
-    Queue<Double> queue = new ArrayBlockingQueue<>(20);
-    signalsLock.lock();
-    Swerve.odometryLock.lock();
-    try {
-      genericSignals.add(signal);
-      genericQueues.add(queue);
-    } finally {
-      signalsLock.unlock();
-      Swerve.odometryLock.unlock();
+    if (registeredSignals != frameWidth) {
+      throw new IllegalStateException(
+          "Only " + registeredSignals + " of " + frameWidth + " odometry signals registered");
     }
-    return queue;
+    isCANFD = canFD;
+    frameBuffer = new OdometryFrameBuffer(frameWidth, frameCapacity);
+    super.start();
+  }
+
+  /**
+   * @return The frame column of a module's drive position, in meters
+   */
+  static int driveColumn(int module) {
+    return 1 + 2 * module;
   }
 
-  /** Returns a new queue that returns timestamp values for each sample. */
-  public Queue<Double> makeTimestampQueue() {
-    Queue<Double> queue = new ArrayBlockingQueue<>(20);
-    Swerve.odometryLock.lock();
-    try {
-      timestampQueues.add(queue);
-    } finally {
-      Swerve.odometryLock.unlock();
+  /**
+   * @return The frame column of a module's turn position, in rotations
+   */
+  static int turnColumn(int module) {
+    return 2 + 2 * module;
+  }
+
+  /** Registers the gyro yaw to be read from the thread. */
+  public void registerYaw(StatusSignal<Angle> yaw) {
+    register(yawColumn, yaw);
+  }
+
+  /**
+   * Registers a module's positions to be read from the thread.
+   *
+   * @param module The index of the module, FL FR BL BR
+   */
+  public void registerModule(
+      int module, StatusSignal<Angle> drivePosition, StatusSignal<Angle> turnPosition) {
+    register(driveColumn(module), drivePosition);
+    register(turnColumn(module), turnPosition);
+  }
+
+  // Frames have a fixed layout, so every signal must be registered before sampling starts
+  private void register(int column, BaseStatusSignal signal) {
+    if (frameBuffer != null) {
+      throw new IllegalStateException("Odometry signals must be registered before start()");
+    }
+    if (phoenixSignals[column] != null) {
+      throw new IllegalStateException("Odometry frame column " + column + " registered twice");
     }
-    return queue;
+    phoenixSignals[column] = signal;
+    registeredSignals++;
+  }
+
+  /**
+   * Copies every frame published since the last call, oldest first. Main loop only.
+   *
+   * @param timestamps Destination for the frame timestamps, its length limits the frames read
+   * @param values Destination for the frame values, indexed [column][frame]
+   * @return The number of frames copied, 0 if the thread is not running
+   */
+  int drainTo(double[] timestamps, double[][] values) {
+    return frameBuffer == null ? 0 : frameBuffer.drainTo(timestamps, values);
+  }
+
+  /**
+   * @return The total number of frames overwritten before the main loop drained them
+   */
+  public long getDroppedFrames() {
+    return frameBuffer == null ? 0 : frameBuffer.getDroppedFrames();
+  }
+
+  /**
+   * @return The estimated FPGA time minus Phoenix time, in seconds
+   */
+  public double getClockOffset() {
+    return clockOffset;
+  }
+
+  /**
+   * @return The spread between the earliest and latest signal timestamps in the last frame, in
+   *     seconds
+   */
+  public double getTimestampSpread() {
+    return timestampSpread;
+  }
+
+  /**
+   * @return The current target sampling rate, in Hz
+   */
+  public double getFrequency() {
+    return frequency;
+  }
+
+  /**
+   * @return The filtered rate frames are actually published at, in Hz
+   */
+  public double getMeasuredFrequency() {
+    return measuredFrequency;
+  }
+
+  /**
+   * @return The filtered absolute error between the actual and target frame period, in seconds
+   */
+  public double getPeriodJitter() {
+    return periodJitter;
+  }
+
+  /**
+   * @return A copy of the non CAN FD wake-up lateness histogram. Buckets are bounded by 50us,
+   *     100us, 200us, 500us, 1ms, 2ms and 5ms, with the last bucket unbounded.
+   */
+  public long[] getWakeLatenessHistogram() {
+    return deadlineTimer.getLatenessHistogram();
+  }
+
+  /**
+   * @return The number of non CAN FD sampling deadlines skipped because a cycle overran
+   */
+  public long getMissedDeadlines() {
+    return deadlineTimer.getMissedDeadlines();
+  }
+
+  /**
+   * Changes the sampling rate. The thread reconfigures its Phoenix signals before the next sample.
+   *
+   * @param frequency The new rate, in Hz
+   */
+  public void requestFrequency(double frequency) {
+    requestedFrequency = frequency;
   }
 
   @Override
   public void run() {
     while (true) {
+      // Apply rate changes between samples, so signals and the wait always agree
+      if (requestedFrequency != frequency) {
+        frequency = requestedFrequency;
+        BaseStatusSignal.setUpdateFrequencyForAll(frequency, phoenixSignals);
+      }
+
       // Wait for updates from all signals
-      signalsLock.lock();
-      try {
-        if (isCANFD && phoenixSignals.length > 0) {
-          BaseStatusSignal.waitForAll(2.0 / Swerve.odometryFrequency, phoenixSignals);
-        } else {
-          // "waitForAll" does not support blocking on multiple signals with a bus
-          // that is not CAN FD, regardless of Pro licensing. No reasoning for this
-          // behavior is provided by the documentation.
-          Thread.sleep((long) (1000.0 / Swerve.odometryFrequency));
-          if (phoenixSignals.length > 0) BaseStatusSignal.refreshAll(phoenixSignals);
-        }
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      } finally {
-        signalsLock.unlock();
+      if (isCANFD) {
+        BaseStatusSignal.waitForAll(2.0 / frequency, phoenixSignals);
+      } else {
+        // "waitForAll" does not support blocking on multiple signals with a bus
+        // that is not CAN FD, regardless of Pro licensing. No reasoning for this
+        // behavior is provided by the documentation.
+        // Wait for absolute deadlines so refresh time and rounding do not add drift.
+        deadlineTimer.waitForNext(frequency);
+        BaseStatusSignal.refreshAll(phoenixSignals);
       }
 
-      // Save new data to queues
-      Swerve.odometryLock.lock();
-      try {
-        // Sample timestamp is current FPGA time minus average CAN latency
-        //     Default timestamps from Phoenix are NOT compatible with
-        //     FPGA timestamps, this solution is imperfect but close
-        double timestamp = RobotController.getFPGATime() / 1e6;
-        double totalLatency = 0.0;
-        for (BaseStatusSignal signal : phoenixSignals) {
-          totalLatency += signal.getTimestamp().getLatency();
-        }
-        if (phoenixSignals.length > 0) {
-          timestamp -= totalLatency / phoenixSignals.length;
-        }
+      double timestamp = sampleTimestamp();
+      measurePeriod();
 
-        // Add new samples to queues
-        for (int i = 0; i < phoenixSignals.length; i++) {
-          phoenixQueues.get(i).offer(phoenixSignals[i].getValueAsDouble());
-        }
-        for (int i = 0; i < genericSignals.size(); i++) {
-          genericQueues.get(i).offer(genericSignals.get(i).getAsDouble());
-        }
-        for (int i = 0; i < timestampQueues.size(); i++) {
-          timestampQueues.get(i).offer(timestamp);
+      // Publish all samples together as one frame
+      for (int i = 0; i < phoenixSignals.length; i++) {
+        frame[i] = phoenixSignals[i].getValueAsDouble();
+      }
+      frameBuffer.publish(timestamp, frame);
+    }
+  }
+
+  /**
+   * @return The FPGA timestamp of the samples that were just read, in seconds
+   */
+  private double sampleTimestamp() {
+    double fpgaTime = RobotController.getFPGATime() / 1e6;
+
+    if (Constants.Swerve.odometryTimingMode == TimingMode.DeviceTimestamp) {
+      double phoenixTime = Utils.getCurrentTimeSeconds();
+      clock.addSample(fpgaTime, phoenixTime, RobotController.getFPGATime() / 1e6);
+      clockOffset = clock.getOffset();
+
+      // Each signal carries its own timestamp, so per-device latency is already accounted for
+      double earliest = Double.POSITIVE_INFINITY;
+      double latest = Double.NEGATIVE_INFINITY;
+      double total = 0.0;
+      int validCount = 0;
+      for (BaseStatusSignal signal : phoenixSignals) {
+        Timestamp signalTimestamp = signal.getTimestamp();
+        if (signalTimestamp.isValid()) {
+          double signalTime = clock.toFPGATime(signalTimestamp.getTime());
+          earliest = Math.min(earliest, signalTime);
+          latest = Math.max(latest, signalTime);
+          total += signalTime;
+          validCount++;
         }
-      } finally {
-        Swerve.odometryLock.unlock();
       }
+      if (validCount > 0) {
+        timestampSpread = latest - earliest;
+        return total / validCount;
+      }
+    }
+
+    // Sample timestamp is current FPGA time minus average CAN latency
+    //     Default timestamps from Phoenix are NOT compatible with
+    //     FPGA timestamps, this solution is imperfect but close
+    double totalLatency = 0.0;
+    for (BaseStatusSignal signal : phoenixSignals) {
+      totalLatency += signal.getTimestamp().getLatency();
+    }
+    fpgaTime -= totalLatency / phoenixSignals.length;
+    timestampSpread = 0.0;
+    return fpgaTime;
+  }
+
+  // Tracks how closely frames follow the target rate, for the scheduler
+  private void measurePeriod() {
+    double now = RobotController.getFPGATime() / 1e6;
+    double period = now - lastFrameTime;
+    lastFrameTime = now;
+    if (period <= 0.0 || period > 1.0) {
+      return; // First frame or a stall, not representative
     }
+    double jitter = Math.abs(period - 1.0 / frequency);
+    periodJitter += periodFilterGain * (jitter - periodJitter);
+    measuredFrequency += periodFilterGain * (1.0 / period - measuredFrequency);
   }
 }
@@ -1,11 +1,11 @@
 package frc.robot.subsystems.drivebase;
 
 import choreo.trajectory.SwerveSample;
+import com.ctre.phoenix6.CANBus;
 import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.controller.ProfiledPIDController;
-import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
@@ -19,15 +19,17 @@ import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
 import frc.robot.Constants.AutoConstants;
 import frc.robot.Robot;
+import frc.robot.util.AllocationCounter;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.VisionMeasurementBatch;
 import java.util.Arrays;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 import org.littletonrobotics.junction.AutoLogOutput;
@@ -38,28 +40,52 @@ public class Swerve extends SubsystemBase {
   private final GyroIO gyroIO;
   private final GyroIOInputsAutoLogged gyroInputs = new GyroIOInputsAutoLogged();
 
+  private final OdometryIO odometryIO;
+  private final OdometryIOInputsAutoLogged odometryInputs = new OdometryIOInputsAutoLogged();
+
   private final Module[] modules; // FL FR BL BR
 
   private final SwerveDriveKinematics kinematics;
-  private final SwerveDrivePoseEstimator poseEstimator;
+  private final SwervePoseEstimator poseEstimator;
+  private int poseResetCount = 0;
+
+  static final double odometryFrequency = 150; // Starting rate, adjusted live
+  static final double minOdometryFrequency = 100;
+  static final double maxOdometryFrequency = 250; // Also sizes the odometry buffers
 
-  static final Lock odometryLock = new ReentrantLock();
-  static final double odometryFrequency = 150;
+  private final OdometryFrequencyScheduler odometryScheduler;
 
-  private SwerveModulePosition[] lastModulePositions = // For delta tracking
-      new SwerveModulePosition[] {
-        new SwerveModulePosition(),
-        new SwerveModulePosition(),
-        new SwerveModulePosition(),
-        new SwerveModulePosition()
-      };
+  // One odometry sample at a time, reused every sample
+  private final double[] odometryDriveDistances; // Meters
+  private final double[] odometryTurnAngles; // Radians
 
-  public Swerve(GyroIO gyroIO, ModuleIO[] moduleIOs) {
+  /**
+   * The measured state of the drivebase, taken once per loop in {@link #periodic()}.
+   *
+   * @param pose The estimated pose after the loop's odometry update
+   * @param robotRelativeSpeeds The measured robot relative speeds
+   * @param fieldRelativeSpeeds The measured field relative speeds
+   * @param moduleStates The measured module states, FL FR BL BR
+   */
+  public record MeasuredState(
+      Pose2d pose,
+      ChassisSpeeds robotRelativeSpeeds,
+      ChassisSpeeds fieldRelativeSpeeds,
+      SwerveModuleState[] moduleStates) {}
+
+  private MeasuredState measuredState;
+
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("Swerve/Periodic");
+  private final LoopProfiler.Stage gyroInputsStage = LoopProfiler.stage("Swerve/Gyro/UpdateInputs");
+  private final LoopProfiler.Stage gyroLogStage = LoopProfiler.stage("Swerve/Gyro/ProcessInputs");
+  private final LoopProfiler.Stage odometryStage = LoopProfiler.stage("Swerve/Odometry");
+
+  public Swerve(GyroIO gyroIO, ModuleIO[] moduleIOs, OdometryIO odometryIO) {
 
     this.kinematics = new SwerveDriveKinematics(Constants.Swerve.moduleTranslations);
     this.poseEstimator =
-        new SwerveDrivePoseEstimator(
-            kinematics,
+        new SwervePoseEstimator(
+            Constants.Swerve.moduleTranslations,
             new Rotation2d(),
             new SwerveModulePosition[] {
               new SwerveModulePosition(),
@@ -68,21 +94,41 @@ public class Swerve extends SubsystemBase {
               new SwerveModulePosition()
             },
             new Pose2d(),
-            VecBuilder.fill(0.6, 0.6, 0.07),
+            VecBuilder.fill(
+                Constants.Swerve.odometryLinearStdDev,
+                Constants.Swerve.odometryLinearStdDev,
+                Constants.Swerve.odometryAngularStdDev),
             VecBuilder.fill(2, 2, 1));
 
     this.gyroIO = gyroIO;
+    this.odometryIO = odometryIO;
     this.modules = new Module[moduleIOs.length];
 
     for (int i = 0; i < moduleIOs.length; i++) {
       modules[i] = new Module(moduleIOs[i]);
     }
 
+    this.odometryDriveDistances = new double[modules.length];
+    this.odometryTurnAngles = new double[modules.length];
+
+    SwerveModuleState[] moduleStates = new SwerveModuleState[modules.length];
+    Arrays.setAll(moduleStates, i -> new SwerveModuleState());
+    this.measuredState =
+        new MeasuredState(getPose(), new ChassisSpeeds(), new ChassisSpeeds(), moduleStates);
+
     // Enable Wrapping
     thetaController.enableContinuousInput(-Math.PI, Math.PI);
     choreoThetaController.enableContinuousInput(-Math.PI, Math.PI);
 
-    PhoenixOdometryThread.getInstance().start();
+    // The odometry signals are on the drivebase's bus, "waitForAll" needs it to be CAN FD
+    CANBus odometryBus = new CANBus(Constants.Swerve.canBus);
+    PhoenixOdometryThread.getInstance().start(RobotBase.isReal() && odometryBus.isNetworkFD());
+    this.odometryScheduler =
+        new OdometryFrequencyScheduler(
+            PhoenixOdometryThread.getInstance(),
+            odometryBus,
+            minOdometryFrequency,
+            maxOdometryFrequency);
   }
 
   /**
@@ -98,33 +144,43 @@ public class Swerve extends SubsystemBase {
    */
   public void resetPose(Pose2d pose) {
 
-    var yaw = RobotBase.isSimulation() ? pose.getRotation() : gyroInputs.yawPosition;
+    // Replay integrates the logged gyro, so it resets against it like the robot did
+    var yaw =
+        RobotBase.isSimulation() && !Robot.replay ? pose.getRotation() : gyroInputs.yawPosition;
     poseEstimator.resetPosition(
         yaw,
         Arrays.stream(modules).map(m -> m.getPosition()).toArray(SwerveModulePosition[]::new),
         pose);
+    updateMeasuredState(measuredState.moduleStates(), measuredState.robotRelativeSpeeds());
+    poseResetCount++;
+  }
+
+  /**
+   * @return The number of times {@link #resetPose(Pose2d)} has been called
+   */
+  public int getPoseResetCount() {
+    return poseResetCount;
   }
 
   /**
-   * @return The velocity of the robot in robot relative coordinates
+   * @return The measured state of the drivebase as of this loop's {@link #periodic()}
+   */
+  public MeasuredState getMeasuredState() {
+    return measuredState;
+  }
+
+  /**
+   * @return The velocity of the robot in robot relative coordinates, measured this loop
    */
   public ChassisSpeeds getVelocityRobotRelative() {
-    var speeds =
-        kinematics.toChassisSpeeds(
-            Arrays.stream(modules).map((m) -> m.getState()).toArray(SwerveModuleState[]::new));
-    return new ChassisSpeeds(
-        speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, speeds.omegaRadiansPerSecond);
+    return measuredState.robotRelativeSpeeds();
   }
 
   /**
-   * @return The velocity of the robot in field relative coordinates
+   * @return The velocity of the robot in field relative coordinates, measured this loop
    */
   public ChassisSpeeds getVelocityFieldRelative() {
-    var speeds =
-        kinematics.toChassisSpeeds(
-            Arrays.stream(modules).map(m -> m.getState()).toArray(SwerveModuleState[]::new));
-    speeds = ChassisSpeeds.fromRobotRelativeSpeeds(speeds, getPose().getRotation());
-    return speeds;
+    return measuredState.fieldRelativeSpeeds();
   }
 
   public void drive(ChassisSpeeds speeds) {
@@ -148,9 +204,7 @@ public class Swerve extends SubsystemBase {
     }
 
     Logger.recordOutput("Swerve/ModuleSetpoints", optimizedModuleStates);
-    Logger.recordOutput(
-        "Swerve/ModuleStates",
-        Arrays.stream(modules).map(m -> m.getState()).toArray(SwerveModuleState[]::new));
+    Logger.recordOutput("Swerve/ModuleStates", measuredState.moduleStates());
   }
 
   /**
@@ -209,18 +263,34 @@ public class Swerve extends SubsystemBase {
 
   public void followTrajectory(SwerveSample sample) {
 
-    Pose2d currentPose = getPose();
-
     Logger.recordOutput("Choreo/DesiredPose", sample.getPose());
 
-    double xFF = sample.vx;
-    double yFF = sample.vy;
-    double rotationFF = sample.omega;
+    followSetpoint(sample.x, sample.y, sample.heading, sample.vx, sample.vy, sample.omega);
+  }
+
+  /**
+   * Tracks a field relative trajectory setpoint, with the velocities as feedforward.
+   *
+   * @param x The setpoint x in meters
+   * @param y The setpoint y in meters
+   * @param heading The setpoint heading in radians
+   * @param vx The setpoint x velocity in meters per second
+   * @param vy The setpoint y velocity in meters per second
+   * @param omega The setpoint angular velocity in radians per second
+   */
+  public void followSetpoint(
+      double x, double y, double heading, double vx, double vy, double omega) {
+
+    Pose2d currentPose = getPose();
+
+    double xFF = vx;
+    double yFF = vy;
+    double rotationFF = omega;
 
-    double xFeedback = choreoXController.calculate(currentPose.getX(), sample.x);
-    double yFeedback = choreoYController.calculate(currentPose.getY(), sample.y);
+    double xFeedback = choreoXController.calculate(currentPose.getX(), x);
+    double yFeedback = choreoYController.calculate(currentPose.getY(), y);
     double rotationFeedback =
-        choreoThetaController.calculate(currentPose.getRotation().getRadians(), sample.heading);
+        choreoThetaController.calculate(currentPose.getRotation().getRadians(), heading);
 
     ChassisSpeeds out =
         ChassisSpeeds.fromFieldRelativeSpeeds(
@@ -243,11 +313,11 @@ public class Swerve extends SubsystemBase {
   public Command resetAutoAimPID() {
     return Commands.runOnce(
         () -> {
-          xController.reset(getPose().getX(), getVelocityFieldRelative().vxMetersPerSecond);
-          yController.reset(getPose().getY(), getVelocityFieldRelative().vyMetersPerSecond);
-          thetaController.reset(
-              getPose().getRotation().getRadians(),
-              getVelocityFieldRelative().omegaRadiansPerSecond);
+          Pose2d pose = getPose();
+          ChassisSpeeds velocity = getVelocityFieldRelative();
+          xController.reset(pose.getX(), velocity.vxMetersPerSecond);
+          yController.reset(pose.getY(), velocity.vyMetersPerSecond);
+          thetaController.reset(pose.getRotation().getRadians(), velocity.omegaRadiansPerSecond);
         });
   }
 
@@ -287,9 +357,10 @@ public class Swerve extends SubsystemBase {
     double thetaError =
         Math.abs(currentPose.getRotation().getRadians())
             - Math.abs(targetPose.getRotation().getRadians());
-    double xVelocity = Math.abs(getVelocityRobotRelative().vxMetersPerSecond);
-    double yVelocity = Math.abs(getVelocityRobotRelative().vyMetersPerSecond);
-    double thetaVelocity = Math.abs(getVelocityRobotRelative().omegaRadiansPerSecond);
+    ChassisSpeeds velocity = getVelocityRobotRelative();
+    double xVelocity = Math.abs(velocity.vxMetersPerSecond);
+    double yVelocity = Math.abs(velocity.vyMetersPerSecond);
+    double thetaVelocity = Math.abs(velocity.omegaRadiansPerSecond);
 
     boolean atX = xError < translationTolerance;
     boolean atY = yError < translationTolerance;
@@ -421,6 +492,30 @@ public class Swerve extends SubsystemBase {
     }
   }
 
+  /**
+   * Reads the estimated pose at a past time, for checking vision against odometry.
+   *
+   * @param timestamp The time to sample, in seconds
+   * @param poseOut Receives {x meters, y meters, heading radians}
+   * @return False if the time is older than the odometry history
+   */
+  public boolean samplePose(double timestamp, double[] poseOut) {
+    return poseEstimator.samplePose(timestamp, poseOut);
+  }
+
+  /**
+   * Fuses a loop's vision measurements from every camera, oldest first so the estimator does not
+   * drop any as out of order.
+   *
+   * @param measurements The measurements, sorted by timestamp in place
+   */
+  public void addVisionMeasurements(VisionMeasurementBatch measurements) {
+    if (RobotBase.isReal() || Robot.replay) {
+      measurements.sortByTimestamp();
+      poseEstimator.addVisionMeasurements(measurements);
+    }
+  }
+
   /**
    * Runs a characterization routine that will determine the "real" wheel radius of the swerve
    * modules It does this by rotating the robot and measuring the distance traveled by the wheels.
@@ -479,51 +574,121 @@ public class Swerve extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long periodicStart = periodicStage.start();
+    updateInputs();
 
-    odometryLock.lock();
-    gyroIO.updateInputs(gyroInputs);
-    Logger.processInputs("Swerve/Gyro", gyroInputs);
-    for (Module module : modules) {
-      module.updateInputs();
+    // Forward kinematics once per loop, every consumer reads the snapshot
+    SwerveModuleState[] moduleStates = new SwerveModuleState[modules.length];
+    for (int i = 0; i < modules.length; i++) {
+      moduleStates[i] = modules[i].getState();
     }
-    odometryLock.unlock();
+    ChassisSpeeds robotRelativeSpeeds = kinematics.toChassisSpeeds(moduleStates);
+
+    long odometryStart = odometryStage.start();
     if (RobotBase.isReal()) {
-      double[] sampleTimestamps = modules[0].getOdometryTimestamps();
-      for (int i = 0; i < sampleTimestamps.length; i++) {
-        SwerveModulePosition[] modulePositions = new SwerveModulePosition[4];
-        SwerveModulePosition[] moduleDeltas = new SwerveModulePosition[4];
-        for (int moduleIndex = 0; moduleIndex < 4; moduleIndex++) {
-          modulePositions[moduleIndex] = modules[moduleIndex].getOdometryPositions()[i];
-          moduleDeltas[moduleIndex] =
-              new SwerveModulePosition(
-                  modulePositions[moduleIndex].distanceMeters
-                      - lastModulePositions[moduleIndex].distanceMeters,
-                  modulePositions[moduleIndex].angle);
-          lastModulePositions[moduleIndex] = modulePositions[moduleIndex];
-          try {
-            poseEstimator.updateWithTime(
-                sampleTimestamps[i], gyroInputs.yawPositions[i], modulePositions);
-          } catch (Exception e) {
-            Logger.recordOutput("Errors", "Pose Estimator failed to update: " + e.getMessage());
-          }
-        }
-      }
+      odometryScheduler.update();
+      PhoenixOdometryThread odometryThread = PhoenixOdometryThread.getInstance();
+      Logger.recordOutput("Odometry/Frequency", odometryThread.getFrequency());
+      Logger.recordOutput("Odometry/MeasuredFrequency", odometryThread.getMeasuredFrequency());
+      Logger.recordOutput("Odometry/PeriodJitter", odometryThread.getPeriodJitter());
+      Logger.recordOutput(
+          "Odometry/WakeLatenessHistogram", odometryThread.getWakeLatenessHistogram());
+      Logger.recordOutput("Odometry/MissedDeadlines", odometryThread.getMissedDeadlines());
+    }
+    if (RobotBase.isReal() || Robot.replay) {
+      // Replay reads the logged odometry frames, so it integrates them the same way
+      updateOdometry();
     } else {
       var simHeading = getPose().getRotation();
-      var gyroDelta =
-          new Rotation2d(
-                  kinematics.toChassisSpeeds(
-                          Arrays.stream(modules)
-                              .map(m -> m.getState())
-                              .toArray(SwerveModuleState[]::new))
-                      .omegaRadiansPerSecond)
-              .times(0.02);
+      var gyroDelta = new Rotation2d(robotRelativeSpeeds.omegaRadiansPerSecond).times(0.02);
 
       simHeading = simHeading.plus(gyroDelta);
 
-      poseEstimator.update(
+      poseEstimator.updateWithTime(
+          Timer.getTimestamp(),
           simHeading,
           Arrays.stream(modules).map(m -> m.getPosition()).toArray(SwerveModulePosition[]::new));
     }
+    odometryStage.stop(odometryStart);
+    updateMeasuredState(moduleStates, robotRelativeSpeeds);
+    periodicStage.stop(periodicStart);
+  }
+
+  /** Takes the measured state snapshot with the current pose estimate. */
+  private void updateMeasuredState(
+      SwerveModuleState[] moduleStates, ChassisSpeeds robotRelativeSpeeds) {
+    Pose2d pose = getPose();
+    measuredState =
+        new MeasuredState(
+            pose,
+            robotRelativeSpeeds,
+            ChassisSpeeds.fromRobotRelativeSpeeds(robotRelativeSpeeds, pose.getRotation()),
+            moduleStates);
+  }
+
+  /** Hands off the latest odometry samples and updates the gyro and module inputs. */
+  void updateInputs() {
+    // Hand off odometry frames without blocking the odometry thread
+    odometryIO.updateInputs(odometryInputs);
+    Logger.processInputs("Swerve/Odometry", odometryInputs);
+    PhoenixOdometryThread odometryThread = PhoenixOdometryThread.getInstance();
+    Logger.recordOutput("Odometry/DroppedFrames", odometryThread.getDroppedFrames());
+    if (Constants.Swerve.odometryTimingMode == PhoenixOdometryThread.TimingMode.DeviceTimestamp) {
+      // Only device timestamps are mapped through the clock offset and differ between signals
+      Logger.recordOutput("Odometry/ClockOffset", odometryThread.getClockOffset());
+      Logger.recordOutput("Odometry/TimestampSpread", odometryThread.getTimestampSpread());
+    }
+
+    long start = gyroInputsStage.start();
+    gyroIO.updateInputs(gyroInputs);
+    gyroInputsStage.stop(start);
+    start = gyroLogStage.start();
+    Logger.processInputs("Swerve/Gyro", gyroInputs);
+    gyroLogStage.stop(start);
+    for (Module module : modules) {
+      module.updateInputs();
+    }
+  }
+
+  /**
+   * Integrates the odometry frames from the latest inputs into the pose estimate. Every frame was
+   * sampled together by the odometry thread, so no matching is needed.
+   */
+  void updateOdometry() {
+    int moduleCount = modules.length;
+    int frameCount = Math.min(odometryInputs.timestamps.length, odometryInputs.yawPositions.length);
+    frameCount =
+        Math.min(
+            frameCount,
+            Math.min(odometryInputs.drivePositions.length, odometryInputs.turnPositions.length)
+                / moduleCount);
+
+    // Every input should hold the same number of frames, anything past the shortest is dropped
+    int discardedSamples =
+        odometryInputs.timestamps.length
+            + odometryInputs.yawPositions.length
+            + odometryInputs.drivePositions.length
+            + odometryInputs.turnPositions.length
+            - frameCount * (2 + 2 * moduleCount);
+    Logger.recordOutput("Odometry/DiscardedSamples", discardedSamples);
+
+    // Samples are fed as primitives into reused arrays, count what is still allocated here
+    long allocatedBefore = AllocationCounter.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < frameCount; i++) {
+      for (int module = 0; module < moduleCount; module++) {
+        odometryDriveDistances[module] = odometryInputs.drivePositions[i * moduleCount + module];
+        odometryTurnAngles[module] =
+            Units.rotationsToRadians(odometryInputs.turnPositions[i * moduleCount + module]);
+      }
+      poseEstimator.updateWithTime(
+          odometryInputs.timestamps[i],
+          Units.degreesToRadians(odometryInputs.yawPositions[i]),
+          odometryDriveDistances,
+          odometryTurnAngles);
+    }
+    long allocatedBytes = AllocationCounter.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+    Logger.recordOutput("Odometry/AllocatedBytes", allocatedBytes);
+    Logger.recordOutput("Odometry/FrameCount", frameCount);
   }
 }
@@ -0,0 +1,512 @@
+package frc.robot.subsystems.drivebase;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.util.VisionMeasurementBatch;
+
+/**
+ * Swerve pose estimator for high-rate odometry, a drop-in for WPILib's {@code
+ * SwerveDrivePoseEstimator} that gives the same poses (see {@code SwervePoseEstimatorTest}).
+ *
+ * <p>The odometry history is a ring of primitive arrays (timestamp, x, y, heading) instead of a map
+ * of boxed pose records, so odometry updates do not allocate. As in WPILib, each vision
+ * measurement is kept as a rigid correction from the odometry pose at its timestamp to the
+ * corrected pose, later measurements are dropped when an older one arrives, and the estimate is
+ * the newest correction applied to the current odometry pose. A late measurement is found with a
+ * binary search and nothing in the history is rewritten.
+ */
+public class SwervePoseEstimator {
+
+  private static final double historySeconds = 1.5; // Matches the WPILib estimator
+  private static final int historyCapacity = 512; // 1.5s at 250Hz plus margin
+  private static final int visionCapacity = 512;
+
+  private final int moduleCount;
+  private final double[] twistXCoefficients; // Rows of the forward kinematics pseudo-inverse
+  private final double[] twistYCoefficients;
+  private final double[] stateVariances = new double[3];
+
+  // Odometry pose history, oldest at historyStart. Heading is continuous (not wrapped).
+  private final double[] times = new double[historyCapacity];
+  private final double[] xs = new double[historyCapacity];
+  private final double[] ys = new double[historyCapacity];
+  private final double[] thetas = new double[historyCapacity];
+  private int historyStart = 0;
+  private int historySize = 0;
+
+  // Vision corrections, oldest at visionStart. Each rotates an odometry pose by the angle and
+  // then translates it.
+  private final double[] visionTimes = new double[visionCapacity];
+  private final double[] correctionThetas = new double[visionCapacity];
+  private final double[] correctionCos = new double[visionCapacity];
+  private final double[] correctionSin = new double[visionCapacity];
+  private final double[] correctionXs = new double[visionCapacity];
+  private final double[] correctionYs = new double[visionCapacity];
+  private int visionStart = 0;
+  private int visionSize = 0;
+
+  // Current odometry pose and the inputs it was integrated from
+  private double odometryX;
+  private double odometryY;
+  private double odometryTheta;
+  private double lastYaw;
+  private final double[] lastDistances;
+  private final double[] moduleDistances; // Scratch for the object overload
+  private final double[] moduleAngles;
+
+  private final double[] odometrySample = new double[3];
+  private final double[] estimateSample = new double[3];
+  private final double[] twist = new double[3];
+
+  private Pose2d estimate = null; // Rebuilt lazily when the estimate changes
+
+  /**
+   * @param moduleTranslations The location of each module relative to the robot center
+   * @param gyroAngle The current gyro angle
+   * @param modulePositions The current module positions
+   * @param initialPose The starting pose estimate
+   * @param stateStdDevs Odometry standard deviations (x meters, y meters, heading radians)
+   * @param visionStdDevs Default vision standard deviations (x meters, y meters, heading radians)
+   */
+  public SwervePoseEstimator(
+      Translation2d[] moduleTranslations,
+      Rotation2d gyroAngle,
+      SwerveModulePosition[] modulePositions,
+      Pose2d initialPose,
+      Matrix<N3, N1> stateStdDevs,
+      Matrix<N3, N1> visionStdDevs) {
+    moduleCount = moduleTranslations.length;
+    twistXCoefficients = new double[2 * moduleCount];
+    twistYCoefficients = new double[2 * moduleCount];
+    computeForwardKinematics(moduleTranslations);
+
+    for (int i = 0; i < 3; i++) {
+      stateVariances[i] = stateStdDevs.get(i, 0) * stateStdDevs.get(i, 0);
+    }
+
+    lastDistances = new double[moduleCount];
+    moduleDistances = new double[moduleCount];
+    moduleAngles = new double[moduleCount];
+    resetPosition(gyroAngle, modulePositions, initialPose);
+  }
+
+  /**
+   * Precomputes the x and y rows of the least squares solution for the robot twist from module
+   * displacements, the same solution {@code SwerveDriveKinematics.toTwist2d} finds.
+   */
+  private void computeForwardKinematics(Translation2d[] moduleTranslations) {
+    // Each module contributes rows [1, 0, -y] and [0, 1, x] to the inverse kinematics matrix A
+    double sumX = 0.0;
+    double sumY = 0.0;
+    double sumSquares = 0.0;
+    for (Translation2d translation : moduleTranslations) {
+      sumX += translation.getX();
+      sumY += translation.getY();
+      sumSquares +=
+          translation.getX() * translation.getX() + translation.getY() * translation.getY();
+    }
+
+    // A^T A, inverted through its cofactors
+    double n = moduleCount;
+    double[][] m = {{n, 0.0, -sumY}, {0.0, n, sumX}, {-sumY, sumX, sumSquares}};
+    double c00 = m[1][1] * m[2][2] - m[1][2] * m[2][1];
+    double c01 = m[1][2] * m[2][0] - m[1][0] * m[2][2];
+    double c02 = m[1][0] * m[2][1] - m[1][1] * m[2][0];
+    double c11 = m[0][0] * m[2][2] - m[0][2] * m[2][0];
+    double c12 = m[0][1] * m[2][0] - m[0][0] * m[2][1];
+    double determinant = m[0][0] * c00 + m[0][1] * c01 + m[0][2] * c02;
+    double[] inverseRow0 = {c00 / determinant, c01 / determinant, c02 / determinant};
+    double[] inverseRow1 = {c01 / determinant, c11 / determinant, c12 / determinant};
+
+    // Pseudo-inverse rows, (A^T A)^-1 A^T
+    for (int i = 0; i < moduleCount; i++) {
+      double moduleX = moduleTranslations[i].getX();
+      double moduleY = moduleTranslations[i].getY();
+      twistXCoefficients[2 * i] = inverseRow0[0] - inverseRow0[2] * moduleY;
+      twistXCoefficients[2 * i + 1] = inverseRow0[1] + inverseRow0[2] * moduleX;
+      twistYCoefficients[2 * i] = inverseRow1[0] - inverseRow1[2] * moduleY;
+      twistYCoefficients[2 * i + 1] = inverseRow1[1] + inverseRow1[2] * moduleX;
+    }
+  }
+
+  /**
+   * Resets the estimate to the given pose and clears the history and vision corrections.
+   *
+   * @param gyroAngle The current gyro angle
+   * @param modulePositions The current module positions
+   * @param pose The new pose estimate
+   */
+  public void resetPosition(
+      Rotation2d gyroAngle, SwerveModulePosition[] modulePositions, Pose2d pose) {
+    odometryX = pose.getX();
+    odometryY = pose.getY();
+    odometryTheta = pose.getRotation().getRadians();
+    lastYaw = gyroAngle.getRadians();
+    for (int i = 0; i < moduleCount; i++) {
+      lastDistances[i] = modulePositions[i].distanceMeters;
+    }
+    historyStart = 0;
+    historySize = 0;
+    visionStart = 0;
+    visionSize = 0;
+    estimate = pose;
+  }
+
+  /**
+   * @return The current pose estimate
+   */
+  public Pose2d getEstimatedPosition() {
+    if (estimate == null) {
+      estimateSample[0] = odometryX;
+      estimateSample[1] = odometryY;
+      estimateSample[2] = odometryTheta;
+      if (visionSize > 0) {
+        compensate(visionIndex(visionSize - 1), estimateSample);
+      }
+      estimate =
+          new Pose2d(estimateSample[0], estimateSample[1], new Rotation2d(estimateSample[2]));
+    }
+    return estimate;
+  }
+
+  /**
+   * Integrates one odometry sample. Does not allocate.
+   *
+   * @param timestamp The sample time in seconds, must not be older than the previous sample
+   * @param gyroAngle The gyro angle at the sample
+   * @param modulePositions The module positions at the sample
+   */
+  public void updateWithTime(
+      double timestamp, Rotation2d gyroAngle, SwerveModulePosition[] modulePositions) {
+    for (int i = 0; i < moduleCount; i++) {
+      moduleDistances[i] = modulePositions[i].distanceMeters;
+      moduleAngles[i] = modulePositions[i].angle.getRadians();
+    }
+    updateWithTime(timestamp, gyroAngle.getRadians(), moduleDistances, moduleAngles);
+  }
+
+  /**
+   * Integrates one odometry sample given as primitives, so callers need no pose objects. Does not
+   * allocate.
+   *
+   * @param timestamp The sample time in seconds, must not be older than the previous sample
+   * @param yaw The gyro angle at the sample, in radians
+   * @param driveDistances The drive distance of each module at the sample, in meters
+   * @param turnAngles The turn angle of each module at the sample, in radians
+   */
+  public void updateWithTime(
+      double timestamp, double yaw, double[] driveDistances, double[] turnAngles) {
+    // Robot relative displacement from the module displacements, heading change from the gyro
+    double twistX = 0.0;
+    double twistY = 0.0;
+    for (int i = 0; i < moduleCount; i++) {
+      double distance = driveDistances[i] - lastDistances[i];
+      double moduleDx = distance * Math.cos(turnAngles[i]);
+      double moduleDy = distance * Math.sin(turnAngles[i]);
+      twistX += twistXCoefficients[2 * i] * moduleDx + twistXCoefficients[2 * i + 1] * moduleDy;
+      twistY += twistYCoefficients[2 * i] * moduleDx + twistYCoefficients[2 * i + 1] * moduleDy;
+      lastDistances[i] = driveDistances[i];
+    }
+    double twistTheta = MathUtil.angleModulus(yaw - lastYaw);
+    lastYaw = yaw;
+
+    exp(odometryX, odometryY, odometryTheta, twistX, twistY, twistTheta, odometrySample);
+    odometryX = odometrySample[0];
+    odometryY = odometrySample[1];
+    odometryTheta = odometrySample[2];
+    estimate = null;
+
+    addToHistory(timestamp);
+  }
+
+  private void addToHistory(double timestamp) {
+    // Drop samples that are full or too old to be corrected by vision
+    while (historySize > 0
+        && (historySize == historyCapacity || timestamp - times[historyStart] >= historySeconds)) {
+      historyStart = (historyStart + 1) % historyCapacity;
+      historySize--;
+    }
+    int index = (historyStart + historySize) % historyCapacity;
+    times[index] = timestamp;
+    xs[index] = odometryX;
+    ys[index] = odometryY;
+    thetas[index] = odometryTheta;
+    historySize++;
+  }
+
+  private int physicalIndex(int logicalIndex) {
+    return (historyStart + logicalIndex) % historyCapacity;
+  }
+
+  private int visionIndex(int logicalIndex) {
+    return (visionStart + logicalIndex) % visionCapacity;
+  }
+
+  /**
+   * @return The logical index of the newest sample at or before the timestamp, or -1 if the
+   *     timestamp is older than the history
+   */
+  private int findSampleBefore(double timestamp) {
+    int low = 0;
+    int high = historySize - 1;
+    int result = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (times[physicalIndex(mid)] <= timestamp) {
+        result = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The logical index of the newest vision correction at or before the timestamp, or -1 if
+   *     there is none
+   */
+  private int findCorrectionBefore(double timestamp) {
+    int low = 0;
+    int high = visionSize - 1;
+    int result = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (visionTimes[visionIndex(mid)] <= timestamp) {
+        result = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reads the odometry pose at a time, interpolated along the twist between samples as in {@code
+   * Pose2d.interpolate}. Times outside the history return the nearest end. The history must not be
+   * empty.
+   */
+  private void sampleOdometry(double timestamp, double[] poseOut) {
+    int before = Math.max(findSampleBefore(timestamp), 0);
+    int beforeIndex = physicalIndex(before);
+    poseOut[0] = xs[beforeIndex];
+    poseOut[1] = ys[beforeIndex];
+    poseOut[2] = thetas[beforeIndex];
+    if (before + 1 < historySize && times[beforeIndex] < timestamp) {
+      int afterIndex = physicalIndex(before + 1);
+      double t = (timestamp - times[beforeIndex]) / (times[afterIndex] - times[beforeIndex]);
+      log(poseOut[0], poseOut[1], poseOut[2], xs[afterIndex], ys[afterIndex], thetas[afterIndex]);
+      exp(poseOut[0], poseOut[1], poseOut[2], twist[0] * t, twist[1] * t, twist[2] * t, poseOut);
+    }
+  }
+
+  /**
+   * Reads the estimated pose at a time, the odometry pose with the newest vision correction at or
+   * before that time. Times outside the history are clamped to it. The history must not be empty.
+   */
+  private void sampleEstimate(double timestamp, double[] poseOut) {
+    double clamped =
+        MathUtil.clamp(timestamp, times[physicalIndex(0)], times[physicalIndex(historySize - 1)]);
+    sampleOdometry(clamped, poseOut);
+    int correction = findCorrectionBefore(clamped);
+    if (correction >= 0) {
+      compensate(visionIndex(correction), poseOut);
+    }
+  }
+
+  /** Applies a vision correction to the pose in place. */
+  private void compensate(int index, double[] pose) {
+    double poseX = pose[0];
+    double poseY = pose[1];
+    pose[0] = correctionCos[index] * poseX - correctionSin[index] * poseY + correctionXs[index];
+    pose[1] = correctionSin[index] * poseX + correctionCos[index] * poseY + correctionYs[index];
+    pose[2] += correctionThetas[index];
+  }
+
+  /**
+   * Reads the estimated pose at a past time, interpolated between odometry samples. Times after
+   * the newest sample return the newest sample.
+   *
+   * @param timestamp The time to sample, in seconds
+   * @param poseOut Receives {x meters, y meters, heading radians}
+   * @return False if the time is older than the history
+   */
+  public boolean samplePose(double timestamp, double[] poseOut) {
+    if (historySize == 0 || timestamp < times[physicalIndex(0)]) {
+      return false;
+    }
+    sampleEstimate(timestamp, poseOut);
+    return true;
+  }
+
+  /**
+   * Adds a vision measurement and drops any later ones, as the WPILib estimator does. Measurements
+   * more than 1.5s older than the newest odometry sample are ignored.
+   *
+   * @param visionPose The robot pose measured by vision
+   * @param timestamp The measurement time in seconds, in the same time base as odometry
+   * @param visionStdDevs Measurement standard deviations (x meters, y meters, heading radians)
+   */
+  public void addVisionMeasurement(
+      Pose2d visionPose, double timestamp, Matrix<N3, N1> visionStdDevs) {
+    addCorrection(
+        timestamp,
+        visionPose.getX(),
+        visionPose.getY(),
+        visionPose.getRotation().getRadians(),
+        visionStdDevs.get(0, 0),
+        visionStdDevs.get(1, 0),
+        visionStdDevs.get(2, 0));
+  }
+
+  /**
+   * Adds a batch of vision measurements in order, with the same result as adding them one at a
+   * time. Each is a binary search over the history, so the batch does not rewrite any samples.
+   *
+   * @param batch The measurements, which should be sorted oldest first so none are dropped
+   */
+  public void addVisionMeasurements(VisionMeasurementBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      addCorrection(
+          batch.getTimestamp(i),
+          batch.getX(i),
+          batch.getY(i),
+          batch.getTheta(i),
+          batch.getXStdDev(i),
+          batch.getYStdDev(i),
+          batch.getThetaStdDev(i));
+    }
+  }
+
+  private void addCorrection(
+      double timestamp,
+      double visionX,
+      double visionY,
+      double visionTheta,
+      double xStdDev,
+      double yStdDev,
+      double thetaStdDev) {
+    if (historySize == 0 || times[physicalIndex(historySize - 1)] - historySeconds > timestamp) {
+      return;
+    }
+    dropStaleCorrections();
+
+    // Blend from the estimate toward the measurement with the steady-state Kalman gain for each
+    // axis, as the WPILib estimator does
+    sampleOdometry(timestamp, odometrySample);
+    sampleEstimate(timestamp, estimateSample);
+    log(estimateSample[0], estimateSample[1], estimateSample[2], visionX, visionY, visionTheta);
+    exp(
+        estimateSample[0],
+        estimateSample[1],
+        estimateSample[2],
+        twist[0] * gain(0, xStdDev),
+        twist[1] * gain(1, yStdDev),
+        twist[2] * gain(2, thetaStdDev),
+        estimateSample);
+
+    // Replace any correction at the same time and drop later ones
+    int previous = findCorrectionBefore(timestamp);
+    if (previous >= 0 && visionTimes[visionIndex(previous)] == timestamp) {
+      previous--;
+    }
+    visionSize = previous + 1;
+    if (visionSize == visionCapacity) {
+      visionStart = (visionStart + 1) % visionCapacity;
+      visionSize--;
+    }
+
+    // Rigid transform taking the odometry pose at the measurement onto the corrected pose
+    int index = visionIndex(visionSize);
+    double correctionTheta = estimateSample[2] - odometrySample[2];
+    double cos = Math.cos(correctionTheta);
+    double sin = Math.sin(correctionTheta);
+    visionTimes[index] = timestamp;
+    correctionThetas[index] = correctionTheta;
+    correctionCos[index] = cos;
+    correctionSin[index] = sin;
+    correctionXs[index] = estimateSample[0] - (cos * odometrySample[0] - sin * odometrySample[1]);
+    correctionYs[index] = estimateSample[1] - (sin * odometrySample[0] + cos * odometrySample[1]);
+    visionSize++;
+    estimate = null;
+  }
+
+  /** Drops corrections that no sample in the history can use anymore. */
+  private void dropStaleCorrections() {
+    int needed = findCorrectionBefore(times[physicalIndex(0)]);
+    if (needed > 0) {
+      visionStart = visionIndex(needed);
+      visionSize -= needed;
+    }
+  }
+
+  /**
+   * @return The steady-state Kalman gain for one axis given the vision standard deviation
+   */
+  private double gain(int axis, double visionStdDev) {
+    double q = stateVariances[axis];
+    if (q == 0.0) {
+      return 0.0;
+    }
+    double r = visionStdDev * visionStdDev;
+    return q / (q + Math.sqrt(q * r));
+  }
+
+  /** Sets {@link #twist} to the twist from the start pose to the end pose, as in Pose2d.log. */
+  private void log(
+      double startX, double startY, double startTheta, double endX, double endY, double endTheta) {
+    double cosStart = Math.cos(startTheta);
+    double sinStart = Math.sin(startTheta);
+    double deltaX = endX - startX;
+    double deltaY = endY - startY;
+    double localX = deltaX * cosStart + deltaY * sinStart;
+    double localY = -deltaX * sinStart + deltaY * cosStart;
+    double deltaTheta = MathUtil.angleModulus(endTheta - startTheta);
+    double halfTheta = 0.5 * deltaTheta;
+    double cosMinusOne = Math.cos(deltaTheta) - 1.0;
+    double halfThetaByTan =
+        Math.abs(cosMinusOne) < 1e-9
+            ? 1.0 - deltaTheta * deltaTheta / 12.0
+            : -(halfTheta * Math.sin(deltaTheta)) / cosMinusOne;
+    twist[0] = localX * halfThetaByTan + localY * halfTheta;
+    twist[1] = -localX * halfTheta + localY * halfThetaByTan;
+    twist[2] = deltaTheta;
+  }
+
+  /**
+   * Moves the start pose along a robot relative twist, as in Pose2d.exp. The output may be one of
+   * the inputs' arrays since the inputs are read first.
+   */
+  private static void exp(
+      double startX,
+      double startY,
+      double startTheta,
+      double twistX,
+      double twistY,
+      double twistTheta,
+      double[] poseOut) {
+    double s;
+    double c;
+    if (Math.abs(twistTheta) < 1e-9) {
+      s = 1.0 - twistTheta * twistTheta / 6.0;
+      c = 0.5 * twistTheta;
+    } else {
+      s = Math.sin(twistTheta) / twistTheta;
+      c = (1.0 - Math.cos(twistTheta)) / twistTheta;
+    }
+    double localX = twistX * s - twistY * c;
+    double localY = twistX * c + twistY * s;
+    double headingCos = Math.cos(startTheta);
+    double headingSin = Math.sin(startTheta);
+    poseOut[0] = startX + localX * headingCos - localY * headingSin;
+    poseOut[1] = startY + localX * headingSin + localY * headingCos;
+    poseOut[2] = startTheta + twistTheta;
+  }
+}
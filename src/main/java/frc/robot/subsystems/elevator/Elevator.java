@@ -7,6 +7,7 @@ import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.util.LoopProfiler;
 import java.util.function.DoubleSupplier;
 import org.littletonrobotics.junction.AutoLogOutput;
 import org.littletonrobotics.junction.Logger;
@@ -16,6 +17,10 @@ public class Elevator extends SubsystemBase {
   private final ElevatorIO io;
   private final ElevatorIOInputsAutoLogged inputs = new ElevatorIOInputsAutoLogged();
 
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("Elevator/Periodic");
+  private final LoopProfiler.Stage inputsStage = LoopProfiler.stage("Elevator/UpdateInputs");
+  private final LoopProfiler.Stage logStage = LoopProfiler.stage("Elevator/ProcessInputs");
+
   public Elevator(ElevatorIO io) {
     this.io = io;
   }
@@ -82,7 +87,13 @@ public class Elevator extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long periodicStart = periodicStage.start();
+    long start = inputsStage.start();
     io.updateInputs(inputs);
+    inputsStage.stop(start);
+    start = logStage.start();
     Logger.processInputs("Elevator/", inputs);
+    logStage.stop(start);
+    periodicStage.stop(periodicStart);
   }
 }
@@ -8,6 +8,7 @@ import edu.wpi.first.math.util.Units;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.AutoLogOutput;
 import org.littletonrobotics.junction.Logger;
 
@@ -16,6 +17,10 @@ public class Intake extends SubsystemBase {
   private final IntakeIO io;
   private final IntakeIOInputsAutoLogged inputs = new IntakeIOInputsAutoLogged();
 
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("Intake/Periodic");
+  private final LoopProfiler.Stage inputsStage = LoopProfiler.stage("Intake/UpdateInputs");
+  private final LoopProfiler.Stage logStage = LoopProfiler.stage("Intake/ProcessInputs");
+
   public Intake(IntakeIO io) {
     this.io = io;
   }
@@ -39,8 +44,14 @@ public class Intake extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long periodicStart = periodicStage.start();
+    long start = inputsStage.start();
     io.updateInputs(inputs);
+    inputsStage.stop(start);
+    start = logStage.start();
     Logger.processInputs("Intake", inputs);
+    logStage.stop(start);
+    periodicStage.stop(periodicStart);
   }
 
   public void changePivotIdlemode(IdleMode mode) {
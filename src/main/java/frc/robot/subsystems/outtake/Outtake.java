@@ -2,6 +2,7 @@ package frc.robot.subsystems.outtake;
 
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.util.LoopProfiler;
 import org.littletonrobotics.junction.Logger;
 
 public class Outtake extends SubsystemBase {
@@ -9,6 +10,10 @@ public class Outtake extends SubsystemBase {
   private final OuttakeIO io;
   private final OuttakeIOInputsAutoLogged inputs = new OuttakeIOInputsAutoLogged();
 
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("Outtake/Periodic");
+  private final LoopProfiler.Stage inputsStage = LoopProfiler.stage("Outtake/UpdateInputs");
+  private final LoopProfiler.Stage logStage = LoopProfiler.stage("Outtake/ProcessInputs");
+
   public Outtake(OuttakeIO io) {
     this.io = io;
   }
@@ -30,7 +35,13 @@ public class Outtake extends SubsystemBase {
 
   @Override
   public void periodic() {
+    long periodicStart = periodicStage.start();
+    long start = inputsStage.start();
     io.updateInputs(inputs);
+    inputsStage.stop(start);
+    start = logStage.start();
     Logger.processInputs("Outtake", inputs);
+    logStage.stop(start);
+    periodicStage.stop(periodicStart);
   }
 }
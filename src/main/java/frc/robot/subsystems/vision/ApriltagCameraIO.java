@@ -10,6 +10,12 @@ public interface ApriltagCameraIO {
     public boolean connected = false;
     public PoseObservation[] poseObservations = new PoseObservation[0];
     public int[] tagIds = new int[0];
+
+    // Health of the worker thread, if results are solved on one
+    public boolean workerAlive = true;
+    public boolean workerFailing = false; // The last poll threw
+    public long workerErrors = 0;
+    public long droppedResults = 0;
   }
 
   public static record PoseObservation(
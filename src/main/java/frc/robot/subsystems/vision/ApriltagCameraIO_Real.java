@@ -2,22 +2,92 @@ package frc.robot.subsystems.vision;
 
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.wpilibj.DriverStation;
 import frc.robot.Constants.VisionConstants;
 import frc.robot.Constants.VisionConstants.CameraInfo;
+import frc.robot.util.SpscRingBuffer;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import org.photonvision.PhotonCamera;
+import org.photonvision.targeting.PhotonPipelineResult;
 
 public class ApriltagCameraIO_Real implements ApriltagCameraIO {
 
+  private static final int resultQueueCapacity = 32; // Over half a second of results at 50fps
+  private static final long workerPollMillis = 5;
+  private static final long workerErrorReportNanos = 1_000_000_000; // Report errors at most 1Hz
+
   PhotonCamera camera;
   CameraInfo cameraInfo;
+  private final Transform3d cameraToRobot;
+
+  // Only used when processing on a worker thread
+  private final SpscRingBuffer<SolvedResult> results;
+  private volatile long droppedResults = 0;
+  private volatile long workerErrors = 0;
+  private volatile boolean workerFailing = false;
+  private final Thread worker;
+
+  /** A pose observation and the tags it was solved from. */
+  private static record SolvedResult(PoseObservation observation, int[] tagIds) {}
 
   public ApriltagCameraIO_Real(CameraInfo cameraInfo) {
+    this(cameraInfo, VisionConstants.processOnWorkerThread);
+  }
+
+  /**
+   * @param cameraInfo The camera to read
+   * @param asynchronous Whether to poll and solve results on a worker thread instead of in {@link
+   *     #updateInputs}
+   */
+  public ApriltagCameraIO_Real(CameraInfo cameraInfo, boolean asynchronous) {
     this.cameraInfo = cameraInfo;
+    cameraToRobot = cameraInfo.robotToCamera.inverse();
     camera = new PhotonCamera(cameraInfo.cameraName);
+
+    if (asynchronous) {
+      results = new SpscRingBuffer<>(resultQueueCapacity);
+      worker = new Thread(this::runWorker, "Vision " + cameraInfo.cameraName);
+      worker.setDaemon(true);
+      worker.start();
+    } else {
+      results = null;
+      worker = null;
+    }
+  }
+
+  /** Polls the camera and solves new results as they arrive, on the worker thread. */
+  private void runWorker() {
+    long lastErrorReport = System.nanoTime() - workerErrorReportNanos;
+    while (true) {
+      // A failed result must not end the thread, or vision stops for the rest of the match
+      try {
+        for (var result : camera.getAllUnreadResults()) {
+          SolvedResult solved = solve(result);
+          if (solved != null && !results.offer(solved)) {
+            droppedResults++; // Only written by this thread
+          }
+        }
+        workerFailing = false;
+      } catch (Exception e) {
+        workerFailing = true;
+        workerErrors++; // Only written by this thread
+        long now = System.nanoTime();
+        if (now - lastErrorReport >= workerErrorReportNanos) {
+          lastErrorReport = now;
+          DriverStation.reportError(
+              "Vision worker for " + cameraInfo.cameraName + " failed: " + e, e.getStackTrace());
+        }
+      }
+
+      try {
+        Thread.sleep(workerPollMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
   }
 
   @Override
@@ -25,66 +95,22 @@ public class ApriltagCameraIO_Real implements ApriltagCameraIO {
 
     inputs.connected = camera.isConnected();
 
-    // Read new camera observations
+    // Read new camera observations, solved here or already solved by the worker
     Set<Short> tagIds = new HashSet<>();
     List<PoseObservation> poseObservations = new LinkedList<>();
-    for (var result : camera.getAllUnreadResults()) {
-
-      // Add pose observation
-      if (result.multitagResult.isPresent()) { // Multitag result
-        var multitagResult = result.multitagResult.get();
-
-        // Calculate robot pose
-        Transform3d fieldToCamera = multitagResult.estimatedPose.best;
-        Transform3d fieldToRobot = fieldToCamera.plus(cameraInfo.robotToCamera.inverse());
-        Pose3d robotPose = new Pose3d(fieldToRobot.getTranslation(), fieldToRobot.getRotation());
-
-        // Calculate average tag distance
-        double totalTagDistance = 0.0;
-        for (var target : result.targets) {
-          totalTagDistance += target.bestCameraToTarget.getTranslation().getNorm();
-        }
-
-        // Add tag IDs
-        tagIds.addAll(multitagResult.fiducialIDsUsed);
-
-        // Add observation
-        poseObservations.add(
-            new PoseObservation(
-                result.getTimestampSeconds(), // Timestamp
-                robotPose, // 3D pose estimate
-                multitagResult.estimatedPose.ambiguity, // Ambiguity
-                multitagResult.fiducialIDsUsed.size(), // Tag count
-                totalTagDistance / result.targets.size() // Average tag distance
-                ));
-
-      } else if (!result.targets.isEmpty()) { // Single tag result
-        var target = result.targets.get(0);
-
-        // Calculate robot pose
-        var tagPose = VisionConstants.kReefTagLayout.getTagPose(target.fiducialId);
-        if (tagPose.isPresent()) {
-          Transform3d fieldToTarget =
-              new Transform3d(tagPose.get().getTranslation(), tagPose.get().getRotation());
-          Transform3d cameraToTarget = target.bestCameraToTarget;
-          Transform3d fieldToCamera = fieldToTarget.plus(cameraToTarget.inverse());
-          Transform3d fieldToRobot = fieldToCamera.plus(cameraInfo.robotToCamera.inverse());
-          Pose3d robotPose = new Pose3d(fieldToRobot.getTranslation(), fieldToRobot.getRotation());
-
-          // Add tag ID
-          tagIds.add((short) target.fiducialId);
-
-          // Add observation
-          poseObservations.add(
-              new PoseObservation(
-                  result.getTimestampSeconds(), // Timestamp
-                  robotPose, // 3D pose estimate
-                  target.poseAmbiguity, // Ambiguity
-                  1, // Tag count
-                  cameraToTarget.getTranslation().getNorm() // Average tag distance
-                  ));
-        }
+    if (results == null) {
+      for (var result : camera.getAllUnreadResults()) {
+        addResult(solve(result), poseObservations, tagIds);
+      }
+    } else {
+      SolvedResult solved;
+      while ((solved = results.poll()) != null) {
+        addResult(solved, poseObservations, tagIds);
       }
+      inputs.workerAlive = worker.isAlive();
+      inputs.workerFailing = workerFailing;
+      inputs.workerErrors = workerErrors;
+      inputs.droppedResults = droppedResults;
     }
 
     // Save pose observations to inputs object
@@ -100,4 +126,80 @@ public class ApriltagCameraIO_Real implements ApriltagCameraIO {
       inputs.tagIds[i++] = id;
     }
   }
+
+  private static void addResult(
+      SolvedResult solved, List<PoseObservation> poseObservations, Set<Short> tagIds) {
+    if (solved == null) {
+      return;
+    }
+    poseObservations.add(solved.observation());
+    for (int id : solved.tagIds()) {
+      tagIds.add((short) id);
+    }
+  }
+
+  /**
+   * Calculates the robot pose from one camera result.
+   *
+   * @return The observation and the tags used, or null if no pose could be solved
+   */
+  private SolvedResult solve(PhotonPipelineResult result) {
+
+    // Add pose observation
+    if (result.multitagResult.isPresent()) { // Multitag result
+      var multitagResult = result.multitagResult.get();
+
+      // Calculate robot pose
+      Transform3d fieldToCamera = multitagResult.estimatedPose.best;
+      Transform3d fieldToRobot = fieldToCamera.plus(cameraToRobot);
+      Pose3d robotPose = new Pose3d(fieldToRobot.getTranslation(), fieldToRobot.getRotation());
+
+      // Calculate average tag distance
+      double totalTagDistance = 0.0;
+      for (var target : result.targets) {
+        totalTagDistance += target.bestCameraToTarget.getTranslation().getNorm();
+      }
+
+      // Add tag IDs
+      int[] tagIds = new int[multitagResult.fiducialIDsUsed.size()];
+      for (int i = 0; i < tagIds.length; i++) {
+        tagIds[i] = multitagResult.fiducialIDsUsed.get(i);
+      }
+
+      // Add observation
+      return new SolvedResult(
+          new PoseObservation(
+              result.getTimestampSeconds(), // Timestamp
+              robotPose, // 3D pose estimate
+              multitagResult.estimatedPose.ambiguity, // Ambiguity
+              multitagResult.fiducialIDsUsed.size(), // Tag count
+              totalTagDistance / result.targets.size() // Average tag distance
+              ),
+          tagIds);
+
+    } else if (!result.targets.isEmpty()) { // Single tag result
+      var target = result.targets.get(0);
+
+      // Calculate robot pose
+      Transform3d fieldToTarget = VisionConstants.kReefTagTable.getFieldToTag(target.fiducialId);
+      if (fieldToTarget != null) {
+        Transform3d cameraToTarget = target.bestCameraToTarget;
+        Transform3d fieldToCamera = fieldToTarget.plus(cameraToTarget.inverse());
+        Transform3d fieldToRobot = fieldToCamera.plus(cameraToRobot);
+        Pose3d robotPose = new Pose3d(fieldToRobot.getTranslation(), fieldToRobot.getRotation());
+
+        // Add observation
+        return new SolvedResult(
+            new PoseObservation(
+                result.getTimestampSeconds(), // Timestamp
+                robotPose, // 3D pose estimate
+                target.poseAmbiguity, // Ambiguity
+                1, // Tag count
+                cameraToTarget.getTranslation().getNorm() // Average tag distance
+                ),
+            new int[] {target.fiducialId});
+      }
+    }
+    return null;
+  }
 }
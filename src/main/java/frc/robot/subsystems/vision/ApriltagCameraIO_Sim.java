@@ -15,7 +15,7 @@ public class ApriltagCameraIO_Sim extends ApriltagCameraIO_Real {
   private final PhotonCameraSim cameraSim;
 
   public ApriltagCameraIO_Sim(CameraInfo cameraInfo, Supplier<Pose2d> poseSupplier) {
-    super(cameraInfo);
+    super(cameraInfo, false); // The simulated cameras are updated in the main loop
     this.poseSupplier = poseSupplier;
     if (visionSim == null) {
       visionSim = new VisionSystemSim("main");
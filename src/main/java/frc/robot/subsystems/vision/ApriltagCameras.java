@@ -4,17 +4,14 @@
 
 package frc.robot.subsystems.vision;
 
-import edu.wpi.first.math.Matrix;
-import edu.wpi.first.math.VecBuilder;
-import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
-import edu.wpi.first.math.numbers.N1;
-import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.wpilibj.Alert;
 import edu.wpi.first.wpilibj.Alert.AlertType;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.VisionConstants;
-import java.util.LinkedList;
+import frc.robot.util.LoopProfiler;
+import frc.robot.util.VisionMeasurementBatch;
+import java.util.ArrayList;
 import java.util.List;
 import org.littletonrobotics.junction.Logger;
 
@@ -24,10 +21,39 @@ public class ApriltagCameras extends SubsystemBase {
   private final ApriltagCameraIO[] io;
   private final ApriltagCameraIOInputsAutoLogged[] inputs;
   private final Alert[] disconnectedAlerts;
+  private final Alert[] workerAlerts;
+  private final long[] lastWorkerErrors;
+
+  // Log keys, built once instead of every loop
+  private final String[] inputKeys;
+  private final String[] tagPosesKeys;
+  private final String[] robotPosesKeys;
+  private final String[] robotPosesAcceptedKeys;
+  private final String[] robotPosesRejectedKeys;
+
+  // Logging buffers, reused every loop
+  private final PoseLogBuffer tagPoses = new PoseLogBuffer(8);
+  private final PoseLogBuffer robotPoses = new PoseLogBuffer(8);
+  private final PoseLogBuffer robotPosesAccepted = new PoseLogBuffer(8);
+  private final PoseLogBuffer robotPosesRejected = new PoseLogBuffer(8);
+  private final PoseLogBuffer allTagPoses = new PoseLogBuffer(16);
+  private final PoseLogBuffer allRobotPoses = new PoseLogBuffer(16);
+  private final PoseLogBuffer allRobotPosesAccepted = new PoseLogBuffer(16);
+  private final PoseLogBuffer allRobotPosesRejected = new PoseLogBuffer(16);
+
+  private final VisionMeasurementBatch measurements = new VisionMeasurementBatch(8);
+  private final List<VisionFilter> filters = new ArrayList<>();
+  private VisionStdDevModel stdDevModel;
+  private final double[] stdDevs = new double[2];
+
+  private final LoopProfiler.Stage periodicStage = LoopProfiler.stage("Vision/Periodic");
+  private final LoopProfiler.Stage inputsStage = LoopProfiler.stage("Vision/UpdateInputs");
+  private final LoopProfiler.Stage logStage = LoopProfiler.stage("Vision/ProcessInputs");
 
   public ApriltagCameras(VisionConsumer consumer, ApriltagCameraIO... io) {
     this.consumer = consumer;
     this.io = io;
+    this.stdDevModel = new VisionStdDevModel(null);
 
     // Initialize inputs
     this.inputs = new ApriltagCameraIOInputsAutoLogged[io.length];
@@ -42,37 +68,101 @@ public class ApriltagCameras extends SubsystemBase {
           new Alert(
               "Vision camera " + Integer.toString(i) + " is disconnected.", AlertType.kWarning);
     }
+
+    // Initialize worker alerts
+    this.workerAlerts = new Alert[io.length];
+    this.lastWorkerErrors = new long[io.length];
+    for (int i = 0; i < inputs.length; i++) {
+      workerAlerts[i] =
+          new Alert(
+              "Vision worker for camera " + Integer.toString(i) + " has failed, see the console.",
+              AlertType.kError);
+    }
+
+    // Initialize log keys
+    this.inputKeys = new String[io.length];
+    this.tagPosesKeys = new String[io.length];
+    this.robotPosesKeys = new String[io.length];
+    this.robotPosesAcceptedKeys = new String[io.length];
+    this.robotPosesRejectedKeys = new String[io.length];
+    for (int i = 0; i < io.length; i++) {
+      inputKeys[i] = "Vision/Camera" + Integer.toString(i);
+      tagPosesKeys[i] = inputKeys[i] + "/TagPoses";
+      robotPosesKeys[i] = inputKeys[i] + "/RobotPoses";
+      robotPosesAcceptedKeys[i] = inputKeys[i] + "/RobotPosesAccepted";
+      robotPosesRejectedKeys[i] = inputKeys[i] + "/RobotPosesRejected";
+    }
+  }
+
+  /**
+   * Adds a stage to the rejection chain, run after the basic checks in the order added.
+   *
+   * @param filter The filter to add
+   * @return This, for chaining
+   */
+  public ApriltagCameras addFilter(VisionFilter filter) {
+    filters.add(filter);
+    return this;
+  }
+
+  /**
+   * Replaces the default formula used to weight observations.
+   *
+   * @param model The model to use
+   * @return This, for chaining
+   */
+  public ApriltagCameras setStdDevModel(VisionStdDevModel model) {
+    stdDevModel = model;
+    return this;
   }
 
   @Override
   public void periodic() {
+    long periodicStart = periodicStage.start();
     for (int i = 0; i < io.length; i++) {
+      long start = inputsStage.start();
       io[i].updateInputs(inputs[i]);
-      Logger.processInputs("Vision/Camera" + Integer.toString(i), inputs[i]);
+      inputsStage.stop(start);
+      start = logStage.start();
+      Logger.processInputs(inputKeys[i], inputs[i]);
+      logStage.stop(start);
+    }
+
+    for (int i = 0; i < filters.size(); i++) {
+      filters.get(i).update();
     }
 
     // Initialize logging values
-    List<Pose3d> allTagPoses = new LinkedList<>();
-    List<Pose3d> allRobotPoses = new LinkedList<>();
-    List<Pose3d> allRobotPosesAccepted = new LinkedList<>();
-    List<Pose3d> allRobotPosesRejected = new LinkedList<>();
+    measurements.clear();
+    allTagPoses.clear();
+    allRobotPoses.clear();
+    allRobotPosesAccepted.clear();
+    allRobotPosesRejected.clear();
 
     // Loop over cameras
     for (int cameraIndex = 0; cameraIndex < io.length; cameraIndex++) {
       // Update disconnected alert
       disconnectedAlerts[cameraIndex].set(!inputs[cameraIndex].connected);
 
+      // Update worker alert, cleared once the worker polls cleanly again
+      ApriltagCameraIOInputsAutoLogged cameraInputs = inputs[cameraIndex];
+      workerAlerts[cameraIndex].set(
+          !cameraInputs.workerAlive
+              || cameraInputs.workerFailing
+              || cameraInputs.workerErrors > lastWorkerErrors[cameraIndex]);
+      lastWorkerErrors[cameraIndex] = cameraInputs.workerErrors;
+
       // Initialize logging values
-      List<Pose3d> tagPoses = new LinkedList<>();
-      List<Pose3d> robotPoses = new LinkedList<>();
-      List<Pose3d> robotPosesAccepted = new LinkedList<>();
-      List<Pose3d> robotPosesRejected = new LinkedList<>();
+      tagPoses.clear();
+      robotPoses.clear();
+      robotPosesAccepted.clear();
+      robotPosesRejected.clear();
 
       // Add tag poses
       for (int tagId : inputs[cameraIndex].tagIds) {
-        var tagPose = VisionConstants.kReefTagLayout.getTagPose(tagId);
-        if (tagPose.isPresent()) {
-          tagPoses.add(tagPose.get());
+        Pose3d tagPose = VisionConstants.kReefTagTable.getPose(tagId);
+        if (tagPose != null) {
+          tagPoses.add(tagPose);
         }
       }
 
@@ -93,6 +183,21 @@ public class ApriltagCameras extends SubsystemBase {
                 || observation.pose().getY() < 0.0
                 || observation.pose().getY() > VisionConstants.kReefTagLayout.getFieldWidth();
 
+        // Calculate standard deviations
+        double linearStdDev = 0;
+        double angularStdDev = 0;
+        if (observation.tagCount() > 0) {
+          stdDevModel.calculate(cameraIndex, observation, inputs[cameraIndex].tagIds, stdDevs);
+          linearStdDev = stdDevs[0];
+          angularStdDev = stdDevs[1];
+        }
+
+        // Run the filter chain
+        for (int i = 0; i < filters.size() && !rejectPose; i++) {
+          rejectPose =
+              !filters.get(i).accept(cameraIndex, observation, linearStdDev, angularStdDev);
+        }
+
         // Add pose to log
         robotPoses.add(observation.pose());
         if (rejectPose) {
@@ -106,61 +211,47 @@ public class ApriltagCameras extends SubsystemBase {
           continue;
         }
 
-        // Calculate standard deviations
-        double stdDevFactor =
-            Math.pow(observation.averageTagDistance(), 2.0) / observation.tagCount();
-        double linearStdDev = VisionConstants.linearStdDevBaseline * stdDevFactor;
-        double angularStdDev = VisionConstants.angularStdDevBaseline * stdDevFactor;
-
-        if (cameraIndex < VisionConstants.cameraStdDevFactors.length) {
-          linearStdDev *= VisionConstants.cameraStdDevFactors[cameraIndex];
-          angularStdDev *= VisionConstants.cameraStdDevFactors[cameraIndex];
-        }
-
-        // Send vision observation
-        consumer.accept(
-            observation.pose().toPose2d(),
+        // Queue vision observation, all cameras are sent together below
+        measurements.add(
             observation.timestamp(),
-            VecBuilder.fill(linearStdDev, linearStdDev, angularStdDev));
+            observation.pose().getX(),
+            observation.pose().getY(),
+            observation.pose().getRotation().getZ(),
+            linearStdDev,
+            linearStdDev,
+            angularStdDev);
       }
 
       // Log camera datadata
-      Logger.recordOutput(
-          "Vision/Camera" + Integer.toString(cameraIndex) + "/TagPoses",
-          tagPoses.toArray(new Pose3d[tagPoses.size()]));
-      Logger.recordOutput(
-          "Vision/Camera" + Integer.toString(cameraIndex) + "/RobotPoses",
-          robotPoses.toArray(new Pose3d[robotPoses.size()]));
-      Logger.recordOutput(
-          "Vision/Camera" + Integer.toString(cameraIndex) + "/RobotPosesAccepted",
-          robotPosesAccepted.toArray(new Pose3d[robotPosesAccepted.size()]));
-      Logger.recordOutput(
-          "Vision/Camera" + Integer.toString(cameraIndex) + "/RobotPosesRejected",
-          robotPosesRejected.toArray(new Pose3d[robotPosesRejected.size()]));
+      Logger.recordOutput(tagPosesKeys[cameraIndex], tagPoses.toLogArray());
+      Logger.recordOutput(robotPosesKeys[cameraIndex], robotPoses.toLogArray());
+      Logger.recordOutput(robotPosesAcceptedKeys[cameraIndex], robotPosesAccepted.toLogArray());
+      Logger.recordOutput(robotPosesRejectedKeys[cameraIndex], robotPosesRejected.toLogArray());
       allTagPoses.addAll(tagPoses);
       allRobotPoses.addAll(robotPoses);
       allRobotPosesAccepted.addAll(robotPosesAccepted);
       allRobotPosesRejected.addAll(robotPosesRejected);
     }
 
+    // Send accepted observations from every camera at once
+    if (measurements.size() > 0) {
+      consumer.accept(measurements);
+    }
+
     // Log summary data
-    Logger.recordOutput(
-        "Vision/Summary/TagPoses", allTagPoses.toArray(new Pose3d[allTagPoses.size()]));
-    Logger.recordOutput(
-        "Vision/Summary/RobotPoses", allRobotPoses.toArray(new Pose3d[allRobotPoses.size()]));
-    Logger.recordOutput(
-        "Vision/Summary/RobotPosesAccepted",
-        allRobotPosesAccepted.toArray(new Pose3d[allRobotPosesAccepted.size()]));
-    Logger.recordOutput(
-        "Vision/Summary/RobotPosesRejected",
-        allRobotPosesRejected.toArray(new Pose3d[allRobotPosesRejected.size()]));
+    Logger.recordOutput("Vision/Summary/TagPoses", allTagPoses.toLogArray());
+    Logger.recordOutput("Vision/Summary/RobotPoses", allRobotPoses.toLogArray());
+    Logger.recordOutput("Vision/Summary/RobotPosesAccepted", allRobotPosesAccepted.toLogArray());
+    Logger.recordOutput("Vision/Summary/RobotPosesRejected", allRobotPosesRejected.toLogArray());
+    periodicStage.stop(periodicStart);
   }
 
   @FunctionalInterface
   public static interface VisionConsumer {
-    public void accept(
-        Pose2d visionRobotPoseMeters,
-        double timestampSeconds,
-        Matrix<N3, N1> visionMeasurementStdDevs);
+    /**
+     * @param measurements Every observation accepted this loop, from all cameras. Reused every
+     *     loop, so it must not be kept.
+     */
+    public void accept(VisionMeasurementBatch measurements);
   }
 }
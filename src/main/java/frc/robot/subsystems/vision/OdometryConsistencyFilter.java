@@ -0,0 +1,168 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.subsystems.vision.ApriltagCameraIO.PoseObservation;
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Rejects observations that disagree with odometry.
+ *
+ * <p>Each observation is compared with the estimated pose at its own timestamp. The error is
+ * weighed by the combined odometry and vision variance as a squared Mahalanobis distance, and the
+ * observation is rejected above a chi-squared threshold. While the robot moves, timestamp error
+ * turns into pose error, so the variance grows with the current speed.
+ *
+ * <p>The odometry variance is the drift accumulated since the estimate was last pinned down, by an
+ * accepted observation or a pose reset: a small floor plus a rate times the time since. Until the
+ * first of either, the estimate is not a reference and every observation is accepted.
+ *
+ * <p>If the estimate itself is wrong (e.g. after a bad first observation), every observation
+ * would be rejected. After enough rejections in a row from one camera, that camera's next
+ * observation is accepted anyway so the estimate can recover. The streaks are counted per camera so
+ * a badly calibrated camera cannot push the others' observations through, and they are cleared when
+ * the pose is reset since the new pose is trusted.
+ */
+public class OdometryConsistencyFilter implements VisionFilter {
+
+  /** Reads the estimated pose at a past time. */
+  @FunctionalInterface
+  public static interface PoseSampler {
+    /**
+     * @param timestamp The time to sample, in seconds
+     * @param poseOut Receives {x meters, y meters, heading radians}
+     * @return False if no pose is known at that time
+     */
+    public boolean sample(double timestamp, double[] poseOut);
+  }
+
+  private final PoseSampler poseSampler;
+  private final Supplier<ChassisSpeeds> fieldVelocity;
+  private final IntSupplier poseResetCount;
+  private final double[] sampledPose = new double[3];
+
+  private double linearSpeed = 0.0;
+  private double angularSpeed = 0.0;
+  private double lastCorrectionTimestamp = Double.NaN; // NaN until the estimate is pinned down
+  private int lastPoseResetCount;
+  private final int[] consecutiveRejections;
+
+  private final long[] acceptedCounts;
+  private final long[] rejectedCounts;
+  private final String[] acceptedKeys;
+  private final String[] rejectedKeys;
+
+  /**
+   * @param poseSampler Source of the estimated pose at observation timestamps
+   * @param fieldVelocity The current field relative velocity of the robot
+   * @param poseResetCount The number of times the pose estimate has been reset
+   * @param cameraCount The number of cameras, for the per-camera counters
+   */
+  public OdometryConsistencyFilter(
+      PoseSampler poseSampler,
+      Supplier<ChassisSpeeds> fieldVelocity,
+      IntSupplier poseResetCount,
+      int cameraCount) {
+    this.poseSampler = poseSampler;
+    this.fieldVelocity = fieldVelocity;
+    this.poseResetCount = poseResetCount;
+    lastPoseResetCount = poseResetCount.getAsInt();
+
+    consecutiveRejections = new int[cameraCount];
+    acceptedCounts = new long[cameraCount];
+    rejectedCounts = new long[cameraCount];
+    acceptedKeys = new String[cameraCount];
+    rejectedKeys = new String[cameraCount];
+    for (int i = 0; i < cameraCount; i++) {
+      String prefix = "Vision/OdometryConsistency/Camera" + Integer.toString(i);
+      acceptedKeys[i] = prefix + "/Accepted";
+      rejectedKeys[i] = prefix + "/Rejected";
+    }
+  }
+
+  @Override
+  public void update() {
+    ChassisSpeeds velocity = fieldVelocity.get();
+    linearSpeed = Math.hypot(velocity.vxMetersPerSecond, velocity.vyMetersPerSecond);
+    angularSpeed = Math.abs(velocity.omegaRadiansPerSecond);
+
+    int resets = poseResetCount.getAsInt();
+    if (resets != lastPoseResetCount) {
+      lastPoseResetCount = resets;
+      lastCorrectionTimestamp = Timer.getTimestamp();
+      Arrays.fill(consecutiveRejections, 0);
+    }
+
+    for (int i = 0; i < acceptedCounts.length; i++) {
+      Logger.recordOutput(acceptedKeys[i], acceptedCounts[i]);
+      Logger.recordOutput(rejectedKeys[i], rejectedCounts[i]);
+    }
+  }
+
+  @Override
+  public boolean accept(
+      int cameraIndex, PoseObservation observation, double linearStdDev, double angularStdDev) {
+    if (Double.isNaN(lastCorrectionTimestamp)
+        || !poseSampler.sample(observation.timestamp(), sampledPose)) {
+      return accepted(cameraIndex, observation); // Nothing to compare against
+    }
+
+    // Variance of the difference between the odometry and vision poses
+    double sinceCorrection = Math.max(observation.timestamp() - lastCorrectionTimestamp, 0.0);
+    double timingError = VisionConstants.timestampUncertainty;
+    double linearVariance =
+        VisionConstants.odometryLinearStdDevFloor * VisionConstants.odometryLinearStdDevFloor
+            + VisionConstants.odometryLinearDriftRate * sinceCorrection
+            + linearStdDev * linearStdDev
+            + (linearSpeed * timingError) * (linearSpeed * timingError);
+    double angularVariance =
+        VisionConstants.odometryAngularStdDevFloor * VisionConstants.odometryAngularStdDevFloor
+            + VisionConstants.odometryAngularDriftRate * sinceCorrection
+            + angularStdDev * angularStdDev
+            + (angularSpeed * timingError) * (angularSpeed * timingError);
+
+    double dx = observation.pose().getX() - sampledPose[0];
+    double dy = observation.pose().getY() - sampledPose[1];
+    double dTheta =
+        MathUtil.angleModulus(observation.pose().getRotation().getZ() - sampledPose[2]);
+    double distanceSquared =
+        (dx * dx + dy * dy) / linearVariance + dTheta * dTheta / angularVariance;
+
+    boolean consistent = distanceSquared <= VisionConstants.maxOdometryMahalanobisSquared;
+    if (cameraIndex >= consecutiveRejections.length) {
+      return consistent ? accepted(cameraIndex, observation) : count(cameraIndex, false);
+    }
+    if (consistent
+        || consecutiveRejections[cameraIndex] >= VisionConstants.maxConsecutiveRejections) {
+      consecutiveRejections[cameraIndex] = 0;
+      return accepted(cameraIndex, observation);
+    }
+    consecutiveRejections[cameraIndex]++;
+    return count(cameraIndex, false);
+  }
+
+  /** Counts an accepted observation, which pins the estimate down at its timestamp. */
+  private boolean accepted(int cameraIndex, PoseObservation observation) {
+    if (Double.isNaN(lastCorrectionTimestamp)
+        || observation.timestamp() > lastCorrectionTimestamp) {
+      lastCorrectionTimestamp = observation.timestamp();
+    }
+    return count(cameraIndex, true);
+  }
+
+  private boolean count(int cameraIndex, boolean accepted) {
+    if (cameraIndex < acceptedCounts.length) {
+      if (accepted) {
+        acceptedCounts[cameraIndex]++;
+      } else {
+        rejectedCounts[cameraIndex]++;
+      }
+    }
+    return accepted;
+  }
+}
@@ -0,0 +1,58 @@
+package frc.robot.subsystems.vision;
+
+import edu.wpi.first.math.geometry.Pose3d;
+
+/**
+ * Reusable, array-backed list of poses to log each loop.
+ *
+ * <p>{@code Logger.recordOutput} logs every element of the array it is given, so the logged array
+ * must be exactly as long as the list. One array is kept per length that has been logged, so once
+ * the largest list size has been seen, filling and logging does not allocate. Struct arrays are
+ * serialized when recorded, so reusing an array on the next loop does not change what was logged.
+ */
+class PoseLogBuffer {
+
+  private Pose3d[] poses;
+  private Pose3d[][] arraysByLength;
+  private int size = 0;
+
+  PoseLogBuffer(int initialCapacity) {
+    poses = new Pose3d[initialCapacity];
+    arraysByLength = new Pose3d[initialCapacity + 1][];
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  void add(Pose3d pose) {
+    if (size == poses.length) { // Only grows past the largest size seen so far
+      Pose3d[] grown = new Pose3d[poses.length * 2];
+      System.arraycopy(poses, 0, grown, 0, size);
+      poses = grown;
+      Pose3d[][] grownArrays = new Pose3d[grown.length + 1][];
+      System.arraycopy(arraysByLength, 0, grownArrays, 0, arraysByLength.length);
+      arraysByLength = grownArrays;
+    }
+    poses[size++] = pose;
+  }
+
+  void addAll(PoseLogBuffer other) {
+    for (int i = 0; i < other.size; i++) {
+      add(other.poses[i]);
+    }
+  }
+
+  /**
+   * @return The poses, in an array that is reused the next time the buffer has this size
+   */
+  Pose3d[] toLogArray() {
+    Pose3d[] array = arraysByLength[size];
+    if (array == null) {
+      array = new Pose3d[size];
+      arraysByLength[size] = array;
+    }
+    System.arraycopy(poses, 0, array, 0, size);
+    return array;
+  }
+}
@@ -0,0 +1,24 @@
+package frc.robot.subsystems.vision;
+
+import frc.robot.subsystems.vision.ApriltagCameraIO.PoseObservation;
+
+/**
+ * A stage in the vision rejection chain. {@link ApriltagCameras} runs each observation that passes
+ * its basic checks (tag count, ambiguity, height and field bounds) through every filter in order,
+ * and rejects it if any filter does.
+ */
+public interface VisionFilter {
+
+  /** Called once per loop before any observations are filtered. */
+  public default void update() {}
+
+  /**
+   * @param cameraIndex The index of the camera the observation came from
+   * @param observation The observation to check
+   * @param linearStdDev The observation's x and y standard deviation, in meters
+   * @param angularStdDev The observation's heading standard deviation, in radians
+   * @return Whether to accept the observation
+   */
+  public boolean accept(
+      int cameraIndex, PoseObservation observation, double linearStdDev, double angularStdDev);
+}
@@ -0,0 +1,223 @@
+package frc.robot.subsystems.vision;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.subsystems.vision.ApriltagCameraIO.PoseObservation;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Standard deviations of vision pose observations, looked up from a table of measured error.
+ *
+ * <p>The table is fitted offline by {@code frc.robot.tools.VisionStdDevFitter} and deployed as
+ * {@value #deployFileName}. It is bucketed by camera, tag count, average tag distance and angle of
+ * incidence (between the tag's normal and the direction to the camera, in the horizontal plane).
+ * Observations that land in a bucket with too few samples, or every observation when there is no
+ * table, use the hand-tuned formula from {@link VisionConstants}. The deployed table starts with
+ * the fitter's buckets and no cells, so the formula is used until a fit replaces it.
+ */
+public class VisionStdDevModel {
+
+  public static final String deployFileName = "vision_stddevs.json";
+
+  /** The serialized table, written by the fitter and read at startup. */
+  public static class Table {
+    public double[] distanceEdges = {}; // Meters, bucket i ends at edge i, the last is open
+    public double[] angleEdges = {}; // Radians, bucket i ends at edge i, the last is open
+    public int maxTagCount = 3; // Larger tag counts share the last bucket
+    public int minSamples = 20; // Buckets with fewer samples use the formula
+    public List<Cell> cells = new ArrayList<>();
+  }
+
+  /** The measured error of one bucket. */
+  public static class Cell {
+    public int camera;
+    public int tagCount;
+    public int distanceBucket;
+    public int angleBucket;
+    public int samples;
+    public double linearStdDev; // Meters
+    public double angularStdDev; // Radians
+  }
+
+  private final Transform3d[] robotToCameras;
+  private final double[] distanceEdges;
+  private final double[] angleEdges;
+  private final int maxTagCount;
+
+  // [camera][tag count - 1][distance bucket][angle bucket], NaN where the formula is used
+  private final double[][][][] linearStdDevs;
+  private final double[][][][] angularStdDevs;
+
+  /**
+   * @param table The fitted table, or null to always use the formula
+   * @param robotToCameras The camera transforms, in camera index order
+   */
+  public VisionStdDevModel(Table table, Transform3d... robotToCameras) {
+    this.robotToCameras = robotToCameras;
+    if (table == null) {
+      table = new Table();
+    }
+    distanceEdges = table.distanceEdges;
+    angleEdges = table.angleEdges;
+    maxTagCount = Math.max(table.maxTagCount, 1);
+
+    int cameraCount = robotToCameras.length;
+    linearStdDevs = new double[cameraCount][maxTagCount][][];
+    angularStdDevs = new double[cameraCount][maxTagCount][][];
+    for (int camera = 0; camera < cameraCount; camera++) {
+      for (int tags = 0; tags < maxTagCount; tags++) {
+        linearStdDevs[camera][tags] = nanGrid(distanceEdges.length + 1, angleEdges.length + 1);
+        angularStdDevs[camera][tags] = nanGrid(distanceEdges.length + 1, angleEdges.length + 1);
+      }
+    }
+
+    for (Cell cell : table.cells) {
+      if (cell.samples < table.minSamples
+          || cell.camera < 0
+          || cell.camera >= cameraCount
+          || cell.tagCount < 1
+          || cell.tagCount > maxTagCount
+          || cell.distanceBucket < 0
+          || cell.distanceBucket > distanceEdges.length
+          || cell.angleBucket < 0
+          || cell.angleBucket > angleEdges.length) {
+        continue;
+      }
+      linearStdDevs[cell.camera][cell.tagCount - 1][cell.distanceBucket][cell.angleBucket] =
+          cell.linearStdDev;
+      angularStdDevs[cell.camera][cell.tagCount - 1][cell.distanceBucket][cell.angleBucket] =
+          cell.angularStdDev;
+    }
+  }
+
+  /**
+   * Loads the table from the deploy directory, falling back to the formula if it is missing or
+   * cannot be read.
+   *
+   * @param robotToCameras The camera transforms, in camera index order
+   */
+  public static VisionStdDevModel loadFromDeploy(Transform3d... robotToCameras) {
+    File file = new File(Filesystem.getDeployDirectory(), deployFileName);
+    if (!file.exists()) {
+      return new VisionStdDevModel(null, robotToCameras);
+    }
+    try {
+      return new VisionStdDevModel(read(file), robotToCameras);
+    } catch (IOException e) {
+      DriverStation.reportWarning(
+          "Failed to read " + deployFileName + ", using default vision std devs: " + e.getMessage(),
+          false);
+      return new VisionStdDevModel(null, robotToCameras);
+    }
+  }
+
+  public static Table read(File file) throws IOException {
+    return new ObjectMapper().readValue(file, Table.class);
+  }
+
+  public static void write(File file, Table table) throws IOException {
+    new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, table);
+  }
+
+  /**
+   * Calculates the standard deviations of an observation.
+   *
+   * @param cameraIndex The camera that made the observation
+   * @param observation The observation
+   * @param tagIds The tags the camera saw this loop
+   * @param stdDevsOut Filled with the linear (meters) and angular (radians) standard deviation
+   */
+  public void calculate(
+      int cameraIndex, PoseObservation observation, int[] tagIds, double[] stdDevsOut) {
+    if (cameraIndex < robotToCameras.length && observation.tagCount() > 0) {
+      double angle = angleOfIncidence(observation.pose(), robotToCameras[cameraIndex], tagIds);
+      if (!Double.isNaN(angle)) {
+        int tags = Math.min(observation.tagCount(), maxTagCount) - 1;
+        int distance = bucket(observation.averageTagDistance(), distanceEdges);
+        int incidence = bucket(angle, angleEdges);
+        double linear = linearStdDevs[cameraIndex][tags][distance][incidence];
+        if (!Double.isNaN(linear)) {
+          stdDevsOut[0] = linear;
+          stdDevsOut[1] = angularStdDevs[cameraIndex][tags][distance][incidence];
+          return;
+        }
+      }
+    }
+    formula(cameraIndex, observation, stdDevsOut);
+  }
+
+  /** The hand-tuned model, scaling the baselines by distance squared over tag count. */
+  private static void formula(int cameraIndex, PoseObservation observation, double[] stdDevsOut) {
+    double stdDevFactor = Math.pow(observation.averageTagDistance(), 2.0) / observation.tagCount();
+    double linearStdDev = VisionConstants.linearStdDevBaseline * stdDevFactor;
+    double angularStdDev = VisionConstants.angularStdDevBaseline * stdDevFactor;
+
+    if (cameraIndex < VisionConstants.cameraStdDevFactors.length) {
+      linearStdDev *= VisionConstants.cameraStdDevFactors[cameraIndex];
+      angularStdDev *= VisionConstants.cameraStdDevFactors[cameraIndex];
+    }
+    stdDevsOut[0] = linearStdDev;
+    stdDevsOut[1] = angularStdDev;
+  }
+
+  /**
+   * @return The index of the bucket containing the value, from 0 to {@code edges.length}
+   */
+  public static int bucket(double value, double[] edges) {
+    int bucket = 0;
+    while (bucket < edges.length && value >= edges[bucket]) {
+      bucket++;
+    }
+    return bucket;
+  }
+
+  /**
+   * Calculates the average angle between each tag's normal and the direction from the tag to the
+   * camera, in the horizontal plane. Does not allocate.
+   *
+   * @param robotPose The observed robot pose
+   * @param robotToCamera The camera's mounting transform
+   * @param tagIds The tags seen
+   * @return The angle in radians, from 0 (head on) to pi, or NaN if no tag is in the layout
+   */
+  public static double angleOfIncidence(
+      Pose3d robotPose, Transform3d robotToCamera, int[] tagIds) {
+    double robotYaw = robotPose.getRotation().getZ();
+    double cos = Math.cos(robotYaw);
+    double sin = Math.sin(robotYaw);
+    double cameraX = robotPose.getX() + cos * robotToCamera.getX() - sin * robotToCamera.getY();
+    double cameraY = robotPose.getY() + sin * robotToCamera.getX() + cos * robotToCamera.getY();
+
+    double total = 0;
+    int count = 0;
+    for (int id : tagIds) {
+      Pose3d tagPose = VisionConstants.kReefTagTable.getPose(id);
+      if (tagPose == null) {
+        continue;
+      }
+      double dx = cameraX - tagPose.getX();
+      double dy = cameraY - tagPose.getY();
+      double tagYaw = tagPose.getRotation().getZ();
+      double dot = (Math.cos(tagYaw) * dx + Math.sin(tagYaw) * dy) / Math.hypot(dx, dy);
+      total += Math.acos(Math.max(-1.0, Math.min(1.0, dot)));
+      count++;
+    }
+    return count == 0 ? Double.NaN : total / count;
+  }
+
+  private static double[][] nanGrid(int rows, int columns) {
+    double[][] grid = new double[rows][columns];
+    for (double[] row : grid) {
+      Arrays.fill(row, Double.NaN);
+    }
+    return grid;
+  }
+}
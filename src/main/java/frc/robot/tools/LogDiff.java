@@ -0,0 +1,294 @@
+package frc.robot.tools;
+
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the outputs of a replay with the original log and lists the keys that diverge most.
+ *
+ * <p>The original log's {@code RealOutputs/} entries are matched with the replay log's {@code
+ * ReplayOutputs/} entries of the same key. Replay keeps the original timestamps, so both logs are
+ * walked together in timestamp order and compared at the end of every cycle where either side
+ * changed. Only the latest value of each key is kept, so memory does not grow with log length.
+ *
+ * <p>Every numeric type is compared as a vector: numbers, booleans (0 or 1), arrays, and structs
+ * made of doubles, such as poses, which covers every WPILib geometry and kinematics struct. The
+ * delta of a cycle is the largest absolute difference between elements. Values whose lengths
+ * differ (e.g. a different number of accepted vision poses) are counted as shape mismatches.
+ *
+ * <p>Run with "./gradlew logDiff -Poriginal=match.wpilog", optionally with
+ * "-Preplay=match_replay.wpilog", "-Pkeys=Swerve/Pose,DriveToPose/" to only compare keys with those
+ * prefixes and "-Ptop=20" for the number of keys to list.
+ */
+public class LogDiff {
+
+  private static final String originalPrefix = "RealOutputs/";
+  private static final String replayPrefix = "ReplayOutputs/";
+
+  /** The latest values of a key in both logs, and its divergence so far. */
+  private static class KeyDiff {
+    final String key;
+    double[] original;
+    double[] replay;
+    boolean changed = false;
+    long samples = 0;
+    long shapeMismatches = 0;
+    double totalDelta = 0;
+    double maxDelta = 0;
+    long maxDeltaTime = 0;
+
+    KeyDiff(String key) {
+      this.key = key;
+    }
+
+    void compare(long time) {
+      changed = false;
+      if (original == null || replay == null) {
+        return;
+      }
+      samples++;
+      if (original.length != replay.length) {
+        shapeMismatches++;
+        return;
+      }
+      double delta = 0;
+      for (int i = 0; i < original.length; i++) {
+        delta = Math.max(delta, Math.abs(original[i] - replay[i]));
+      }
+      totalDelta += delta;
+      if (delta > maxDelta) {
+        maxDelta = delta;
+        maxDeltaTime = time;
+      }
+    }
+  }
+
+  /** One log being walked, decoding the entries that are compared. */
+  private static class Side {
+    final Iterator<DataLogRecord> records;
+    final String prefix;
+    final boolean isReplay;
+    final Map<Integer, KeyDiff> diffsById = new HashMap<>();
+    final Map<Integer, String> typesById = new HashMap<>();
+    DataLogRecord next;
+
+    Side(String path, String prefix, boolean isReplay) throws IOException {
+      DataLogReader reader = new DataLogReader(path);
+      if (!reader.isValid()) {
+        throw new IOException(path + " is not a valid WPILOG");
+      }
+      this.records = reader.iterator();
+      this.prefix = prefix;
+      this.isReplay = isReplay;
+      advance();
+    }
+
+    void advance() {
+      next = records.hasNext() ? records.next() : null;
+    }
+
+    /** Applies the next record and moves past it. */
+    void apply(Map<String, KeyDiff> diffs, List<String> keyFilters, List<KeyDiff> changed) {
+      DataLogRecord record = next;
+      advance();
+
+      if (record.isStart()) {
+        var start = record.getStartData();
+        String name = start.name.startsWith("/") ? start.name.substring(1) : start.name;
+        if (!name.startsWith(prefix)) {
+          return;
+        }
+        String key = name.substring(prefix.length());
+        if (!matches(key, keyFilters)) {
+          return;
+        }
+        diffsById.put(start.entry, diffs.computeIfAbsent(key, KeyDiff::new));
+        typesById.put(start.entry, start.type);
+      } else if (!record.isControl()) {
+        KeyDiff diff = diffsById.get(record.getEntry());
+        if (diff == null) {
+          return;
+        }
+        double[] value = decode(record, typesById.get(record.getEntry()));
+        if (value == null) {
+          return;
+        }
+        if (isReplay) {
+          diff.replay = value;
+        } else {
+          diff.original = value;
+        }
+        if (!diff.changed) {
+          diff.changed = true;
+          changed.add(diff);
+        }
+      }
+    }
+  }
+
+  /**
+   * @param args The original log, then optionally the replay log, "--keys=a,b" and "--top=N"
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: LogDiff <original.wpilog> [replay.wpilog] [--keys=a,b] [--top=N]");
+      System.exit(1);
+    }
+    String originalPath = args[0];
+    String replayPath = originalPath.replace(".wpilog", "_replay.wpilog");
+    List<String> keyFilters = new ArrayList<>();
+    int top = 20;
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].startsWith("--keys=")) {
+        for (String key : args[i].substring("--keys=".length()).split(",")) {
+          if (!key.isBlank()) {
+            keyFilters.add(key.startsWith("/") ? key.substring(1) : key);
+          }
+        }
+      } else if (args[i].startsWith("--top=")) {
+        top = Integer.parseInt(args[i].substring("--top=".length()));
+      } else {
+        replayPath = args[i];
+      }
+    }
+
+    List<KeyDiff> diffs = diff(originalPath, replayPath, keyFilters);
+    diffs.sort((a, b) -> Double.compare(b.maxDelta, a.maxDelta));
+
+    System.out.println("Comparing " + originalPath + " with " + replayPath);
+    System.out.printf(
+        "%-50s %8s %12s %12s %10s %10s%n",
+        "Key", "Samples", "Max delta", "Mean delta", "At (s)", "Shape diff");
+    for (int i = 0; i < Math.min(top, diffs.size()); i++) {
+      KeyDiff diff = diffs.get(i);
+      System.out.printf(
+          "%-50s %8d %12.6g %12.6g %10.3f %10d%n",
+          diff.key,
+          diff.samples,
+          diff.maxDelta,
+          diff.samples > diff.shapeMismatches
+              ? diff.totalDelta / (diff.samples - diff.shapeMismatches)
+              : 0,
+          diff.maxDeltaTime / 1e6,
+          diff.shapeMismatches);
+    }
+
+    long identical = diffs.stream().filter(diff -> diff.maxDelta == 0).count();
+    System.out.println(identical + " of " + diffs.size() + " compared keys are identical");
+  }
+
+  /**
+   * Walks both logs in timestamp order and compares every matching key.
+   *
+   * @param keyFilters Key prefixes to compare, or empty to compare every output
+   * @return The divergence of each key found in either log
+   */
+  static List<KeyDiff> diff(String originalPath, String replayPath, List<String> keyFilters)
+      throws IOException {
+    Side original = new Side(originalPath, originalPrefix, false);
+    Side replay = new Side(replayPath, replayPrefix, true);
+    Map<String, KeyDiff> diffs = new HashMap<>();
+    List<KeyDiff> changed = new ArrayList<>();
+    long cycleTime = Long.MIN_VALUE;
+
+    while (original.next != null || replay.next != null) {
+      Side side;
+      if (replay.next == null
+          || (original.next != null
+              && original.next.getTimestamp() <= replay.next.getTimestamp())) {
+        side = original;
+      } else {
+        side = replay;
+      }
+
+      // Compare everything that changed in the previous cycle before starting the next
+      long time = side.next.getTimestamp();
+      if (time > cycleTime) {
+        for (int i = 0; i < changed.size(); i++) {
+          changed.get(i).compare(cycleTime);
+        }
+        changed.clear();
+        cycleTime = time;
+      }
+      side.apply(diffs, keyFilters, changed);
+    }
+    for (int i = 0; i < changed.size(); i++) {
+      changed.get(i).compare(cycleTime);
+    }
+    return new ArrayList<>(diffs.values());
+  }
+
+  private static boolean matches(String key, List<String> keyFilters) {
+    if (keyFilters.isEmpty()) {
+      return true;
+    }
+    for (String filter : keyFilters) {
+      if (key.startsWith(filter)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return The record as a vector of numbers, or null if the type is not numeric
+   */
+  private static double[] decode(DataLogRecord record, String type) {
+    switch (type) {
+      case "double":
+        return new double[] {record.getDouble()};
+      case "float":
+        return new double[] {record.getFloat()};
+      case "int64":
+        return new double[] {record.getInteger()};
+      case "boolean":
+        return new double[] {record.getBoolean() ? 1 : 0};
+      case "double[]":
+        return record.getDoubleArray();
+      case "float[]":
+        float[] floats = record.getFloatArray();
+        double[] fromFloats = new double[floats.length];
+        for (int i = 0; i < floats.length; i++) {
+          fromFloats[i] = floats[i];
+        }
+        return fromFloats;
+      case "int64[]":
+        long[] longs = record.getIntegerArray();
+        double[] fromLongs = new double[longs.length];
+        for (int i = 0; i < longs.length; i++) {
+          fromLongs[i] = longs[i];
+        }
+        return fromLongs;
+      case "boolean[]":
+        boolean[] booleans = record.getBooleanArray();
+        double[] fromBooleans = new double[booleans.length];
+        for (int i = 0; i < booleans.length; i++) {
+          fromBooleans[i] = booleans[i] ? 1 : 0;
+        }
+        return fromBooleans;
+      default:
+        if (!type.startsWith("struct:")) {
+          return null;
+        }
+        // Geometry and kinematics structs are all doubles
+        byte[] raw = record.getRaw();
+        if (raw.length % Double.BYTES != 0) {
+          return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+        double[] values = new double[raw.length / Double.BYTES];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = buffer.getDouble();
+        }
+        return values;
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package frc.robot.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import frc.robot.util.ReplayMetrics;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays every log in a directory through {@code Robot} and reports the cost of each loop and how
+ * the replayed outputs differ from the original ({@link ReplayOutputStats}).
+ *
+ * <p>Each log is replayed in its own JVM, since AdvantageKit's {@code Logger} is static and exits
+ * the JVM when the log ends. Logs are replayed in parallel, one JVM per core by default. The robot
+ * runs with {@code frc.robot.replay=true} and records {@link ReplayMetrics}. The combined loop
+ * cost is compared with a stored baseline, and the run fails if the CPU time per loop, allocation
+ * per loop or GC time per loop is more than {@link #tolerance} worse.
+ *
+ * <p>Run with "./gradlew replayBenchmark -PlogDir=logs", add "-PupdateBaseline" to store the
+ * result as the new baseline and "-Pjobs=1" to replay one log at a time. Loop times are only
+ * comparable between runs on the same machine with the same number of jobs.
+ */
+public class ReplayBenchmark {
+
+  private static final double tolerance = 0.10; // Allowed fraction worse than the baseline
+  private static final long timeoutMinutes = 10; // Per log
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  /** The benchmark results, serialized to JSON. */
+  public static class Report {
+    public List<ReplayMetrics.Summary> logs = new ArrayList<>();
+    public ReplayMetrics.Summary total = new ReplayMetrics.Summary();
+    public List<ReplayOutputStats> outputs = new ArrayList<>();
+    public ReplayOutputStats outputsTotal = new ReplayOutputStats();
+  }
+
+  private static record LogResult(ReplayMetrics.Summary loopCost, ReplayOutputStats outputs) {}
+
+  /**
+   * @param args The log directory, the report file, the baseline file, then optionally
+   *     "--update-baseline" and "--jobs=N"
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      System.err.println(
+          "Usage: ReplayBenchmark <log dir> <report.json> <baseline.json> [--update-baseline]"
+              + " [--jobs=N]");
+      System.exit(1);
+    }
+    File logDir = new File(args[0]);
+    File reportFile = new File(args[1]);
+    File baselineFile = new File(args[2]);
+    boolean updateBaseline = false;
+    int jobs = Runtime.getRuntime().availableProcessors();
+    for (int i = 3; i < args.length; i++) {
+      if (args[i].equals("--update-baseline")) {
+        updateBaseline = true;
+      } else if (args[i].startsWith("--jobs=")) {
+        jobs = Math.max(Integer.parseInt(args[i].substring("--jobs=".length())), 1);
+      }
+    }
+
+    List<File> logs = findLogs(logDir);
+    if (logs.isEmpty()) {
+      System.err.println("No logs found in " + logDir.getAbsolutePath());
+      System.exit(1);
+    }
+    File workDir = new File(reportFile.getAbsoluteFile().getParentFile(), "replay");
+    workDir.mkdirs();
+
+    // Fan out one JVM per log, results are collected in log order
+    System.out.println("Replaying " + logs.size() + " logs, " + jobs + " at a time");
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, logs.size()));
+    List<Future<LogResult>> results = new ArrayList<>();
+    for (File log : logs) {
+      results.add(
+          executor.submit(
+              () -> {
+                ReplayMetrics.Summary loopCost = replay(log, workDir);
+                // The replay log is complete once its JVM has exited
+                return new LogResult(loopCost, ReplayOutputStats.read(replayLogFor(log)));
+              }));
+    }
+
+    Report report = new Report();
+    for (int i = 0; i < logs.size(); i++) {
+      LogResult result = results.get(i).get();
+      report.logs.add(result.loopCost());
+      report.outputs.add(result.outputs());
+      System.out.println("Finished " + logs.get(i).getName());
+    }
+    executor.shutdown();
+    report.total = combine(report.logs);
+    report.outputsTotal = ReplayOutputStats.combine(report.outputs);
+    mapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+    print(report);
+
+    if (updateBaseline) {
+      mapper.writerWithDefaultPrettyPrinter().writeValue(baselineFile, report);
+      System.out.println("Updated baseline " + baselineFile);
+    } else if (baselineFile.exists()) {
+      Report baseline = mapper.readValue(baselineFile, Report.class);
+      if (!compare(report.total, baseline.total)) {
+        System.exit(1);
+      }
+    } else {
+      System.out.println("No baseline at " + baselineFile + ", run with -PupdateBaseline to store");
+    }
+  }
+
+  /**
+   * @return The logs in the directory, excluding replay outputs, sorted by name
+   */
+  static List<File> findLogs(File logDir) {
+    File[] files =
+        logDir.listFiles(
+            (dir, name) -> name.endsWith(".wpilog") && !name.endsWith("_replay.wpilog"));
+    if (files == null) {
+      return List.of();
+    }
+    Arrays.sort(files);
+    return List.of(files);
+  }
+
+  /**
+   * Replays one log in a new JVM with the same classpath and native libraries as this one.
+   *
+   * @param log The log to replay
+   * @param workDir Where to write the robot's console output and metrics
+   * @return The measured loop cost
+   */
+  static ReplayMetrics.Summary replay(File log, File workDir)
+      throws IOException, InterruptedException {
+    String name = log.getName().replace(".wpilog", "");
+    File metricsFile = new File(workDir, name + "_metrics.json");
+    File outputFile = new File(workDir, name + "_output.txt");
+    metricsFile.delete();
+    replayLogFor(log).delete(); // Left by a previous run
+
+    ProcessBuilder builder =
+        new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getAbsolutePath(),
+                "-Djava.library.path=" + System.getProperty("java.library.path"),
+                "-Dfrc.robot.replay=true",
+                "-D" + ReplayMetrics.outputProperty + "=" + metricsFile.getAbsolutePath(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                "frc.robot.Main")
+            .redirectErrorStream(true)
+            .redirectOutput(outputFile);
+    builder.environment().put("AKIT_LOG_PATH", log.getAbsolutePath()); // Read by findReplayLog()
+
+    Process process = builder.start();
+    if (!process.waitFor(timeoutMinutes, TimeUnit.MINUTES)) {
+      process.destroyForcibly();
+      throw new IOException("Replay of " + log + " timed out, see " + outputFile);
+    }
+    if (!metricsFile.exists()) {
+      throw new IOException("Replay of " + log + " wrote no metrics, see " + outputFile);
+    }
+    ReplayMetrics.Summary summary = mapper.readValue(metricsFile, ReplayMetrics.Summary.class);
+    summary.log = log.getName();
+    return summary;
+  }
+
+  /**
+   * @return The log that replaying {@code log} writes, see {@code Robot.robotInit()}
+   */
+  static File replayLogFor(File log) {
+    return new File(log.getParentFile(), log.getName().replace(".wpilog", "_replay.wpilog"));
+  }
+
+  /**
+   * @return The loop weighted combination of the summaries
+   */
+  static ReplayMetrics.Summary combine(List<ReplayMetrics.Summary> summaries) {
+    ReplayMetrics.Summary total = new ReplayMetrics.Summary();
+    total.log = "Total";
+    double allocatedBytes = 0;
+    for (ReplayMetrics.Summary summary : summaries) {
+      total.loops += summary.loops;
+      total.cpuP50Ms += summary.cpuP50Ms * summary.loops;
+      total.cpuP99Ms += summary.cpuP99Ms * summary.loops;
+      total.cpuMaxMs = Math.max(total.cpuMaxMs, summary.cpuMaxMs);
+      total.cpuTotalSeconds += summary.cpuTotalSeconds;
+      allocatedBytes += summary.allocatedBytesPerLoop * summary.loops;
+      total.gcCount += summary.gcCount;
+      total.gcTimeMs += summary.gcTimeMs;
+      total.maxLoopGcTimeMs = Math.max(total.maxLoopGcTimeMs, summary.maxLoopGcTimeMs);
+    }
+    if (total.loops > 0) {
+      total.cpuP50Ms /= total.loops;
+      total.cpuP99Ms /= total.loops;
+      total.allocatedBytesPerLoop = allocatedBytes / total.loops;
+    }
+    if (total.cpuTotalSeconds > 0) {
+      total.allocationRateMBPerCpuSecond = allocatedBytes / 1e6 / total.cpuTotalSeconds;
+    }
+    return total;
+  }
+
+  /**
+   * Prints each metric next to the baseline.
+   *
+   * @return False if any metric regressed by more than the tolerance
+   */
+  static boolean compare(ReplayMetrics.Summary current, ReplayMetrics.Summary baseline) {
+    boolean passed = true;
+    passed &= compare("CPU p50 (ms)", current.cpuP50Ms, baseline.cpuP50Ms);
+    passed &= compare("CPU p99 (ms)", current.cpuP99Ms, baseline.cpuP99Ms);
+    passed &=
+        compare(
+            "Allocated/loop (B)", current.allocatedBytesPerLoop, baseline.allocatedBytesPerLoop);
+    passed &=
+        compare(
+            "GC time/loop (ms)",
+            current.loops > 0 ? current.gcTimeMs / current.loops : 0,
+            baseline.loops > 0 ? baseline.gcTimeMs / baseline.loops : 0);
+    System.out.println(passed ? "No regressions" : "Regressed against the baseline");
+    return passed;
+  }
+
+  private static boolean compare(String name, double current, double baseline) {
+    boolean regressed = current > baseline * (1 + tolerance) && current - baseline > 1e-6;
+    System.out.printf(
+        "%-20s %12.4f baseline %12.4f%s%n",
+        name, current, baseline, regressed ? "  REGRESSED" : "");
+    return !regressed;
+  }
+
+  private static void print(Report report) {
+    System.out.printf(
+        "%-40s %8s %9s %9s %9s %12s %8s%n",
+        "Log", "Loops", "p50 ms", "p99 ms", "max ms", "B/loop", "GC ms");
+    List<ReplayMetrics.Summary> rows = new ArrayList<>(report.logs);
+    rows.add(report.total);
+    for (ReplayMetrics.Summary summary : rows) {
+      System.out.printf(
+          "%-40s %8d %9.3f %9.3f %9.3f %12.0f %8.0f%n",
+          summary.log,
+          summary.loops,
+          summary.cpuP50Ms,
+          summary.cpuP99Ms,
+          summary.cpuMaxMs,
+          summary.allocatedBytesPerLoop,
+          summary.gcTimeMs);
+    }
+
+    System.out.printf(
+        "%-40s %10s %10s %10s %10s %10s%n",
+        "Log", "Mean div m", "Max div m", "Max rad", "Accept", "Real acc");
+    List<ReplayOutputStats> outputRows = new ArrayList<>(report.outputs);
+    outputRows.add(report.outputsTotal);
+    for (ReplayOutputStats stats : outputRows) {
+      System.out.printf(
+          "%-40s %10.4f %10.4f %10.4f %9.1f%% %9.1f%%%n",
+          stats.log,
+          stats.meanPoseDivergence,
+          stats.maxPoseDivergence,
+          stats.maxHeadingDivergence,
+          stats.replayAcceptRate * 100,
+          stats.realAcceptRate * 100);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package frc.robot.tools;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * How a replay's outputs differ from the original robot's, read from the replay log.
+ *
+ * <p>AdvantageKit copies the original outputs into the replay log under {@code RealOutputs/} and
+ * writes the replayed code's under {@code ReplayOutputs/}. The pose divergence is the distance
+ * between the two {@code Swerve/Pose} values at the end of each cycle. Replay integrates the logged
+ * odometry frames through the same path as the robot, so it covers odometry as well as vision. The
+ * vision accept rate is the fraction of {@code Vision/Summary/RobotPoses} that were also in {@code
+ * RobotPosesAccepted}. The log is streamed, so memory does not grow with its length.
+ */
+public class ReplayOutputStats {
+
+  public String log = "";
+  public int poseSamples;
+  public double meanPoseDivergence; // Meters
+  public double maxPoseDivergence; // Meters
+  public double maxHeadingDivergence; // Radians
+  public long realVisionPoses;
+  public long realVisionAccepted;
+  public long replayVisionPoses;
+  public long replayVisionAccepted;
+  public double realAcceptRate;
+  public double replayAcceptRate;
+
+  private static final String realPrefix = "RealOutputs/";
+  private static final String replayPrefix = "ReplayOutputs/";
+  private static final String poseKey = "Swerve/Pose";
+  private static final String visionPosesKey = "Vision/Summary/RobotPoses";
+  private static final String visionAcceptedKey = "Vision/Summary/RobotPosesAccepted";
+
+  /**
+   * @param replayLog The log written by the replay
+   */
+  public static ReplayOutputStats read(File replayLog) throws IOException {
+    DataLogReader reader = new DataLogReader(replayLog.getAbsolutePath());
+    if (!reader.isValid()) {
+      throw new IOException(replayLog + " is not a valid WPILOG");
+    }
+
+    ReplayOutputStats stats = new ReplayOutputStats();
+    stats.log = replayLog.getName();
+    int realPoseId = -1;
+    int replayPoseId = -1;
+    int realVisionPosesId = -1;
+    int realVisionAcceptedId = -1;
+    int replayVisionPosesId = -1;
+    int replayVisionAcceptedId = -1;
+
+    Pose2d realPose = null;
+    Pose2d replayPose = null;
+    boolean poseChanged = false;
+    long cycleTime = Long.MIN_VALUE;
+    double totalDivergence = 0;
+
+    for (DataLogRecord record : reader) {
+      if (record.isStart()) {
+        var start = record.getStartData();
+        String name = start.name.startsWith("/") ? start.name.substring(1) : start.name;
+        if (name.equals(realPrefix + poseKey)) {
+          realPoseId = start.entry;
+        } else if (name.equals(replayPrefix + poseKey)) {
+          replayPoseId = start.entry;
+        } else if (name.equals(realPrefix + visionPosesKey)) {
+          realVisionPosesId = start.entry;
+        } else if (name.equals(realPrefix + visionAcceptedKey)) {
+          realVisionAcceptedId = start.entry;
+        } else if (name.equals(replayPrefix + visionPosesKey)) {
+          replayVisionPosesId = start.entry;
+        } else if (name.equals(replayPrefix + visionAcceptedKey)) {
+          replayVisionAcceptedId = start.entry;
+        }
+        continue;
+      } else if (record.isControl()) {
+        continue;
+      }
+
+      // Every value in a cycle has the cycle's timestamp, so compare once the next cycle starts
+      if (record.getTimestamp() != cycleTime) {
+        if (poseChanged && realPose != null && replayPose != null) {
+          double divergence = realPose.getTranslation().getDistance(replayPose.getTranslation());
+          double headingDivergence =
+              Math.abs(realPose.getRotation().minus(replayPose.getRotation()).getRadians());
+          totalDivergence += divergence;
+          stats.maxPoseDivergence = Math.max(stats.maxPoseDivergence, divergence);
+          stats.maxHeadingDivergence = Math.max(stats.maxHeadingDivergence, headingDivergence);
+          stats.poseSamples++;
+        }
+        poseChanged = false;
+        cycleTime = record.getTimestamp();
+      }
+
+      int id = record.getEntry();
+      if (id == realPoseId) {
+        realPose = Pose2d.struct.unpack(buffer(record.getRaw()));
+        poseChanged = true;
+      } else if (id == replayPoseId) {
+        replayPose = Pose2d.struct.unpack(buffer(record.getRaw()));
+        poseChanged = true;
+      } else if (id == realVisionPosesId) {
+        stats.realVisionPoses += poseCount(record);
+      } else if (id == realVisionAcceptedId) {
+        stats.realVisionAccepted += poseCount(record);
+      } else if (id == replayVisionPosesId) {
+        stats.replayVisionPoses += poseCount(record);
+      } else if (id == replayVisionAcceptedId) {
+        stats.replayVisionAccepted += poseCount(record);
+      }
+    }
+
+    if (stats.poseSamples > 0) {
+      stats.meanPoseDivergence = totalDivergence / stats.poseSamples;
+    }
+    stats.updateRates();
+    return stats;
+  }
+
+  /**
+   * @return The combination of the stats, weighted by pose samples and vision poses
+   */
+  public static ReplayOutputStats combine(List<ReplayOutputStats> all) {
+    ReplayOutputStats total = new ReplayOutputStats();
+    total.log = "Total";
+    double totalDivergence = 0;
+    for (ReplayOutputStats stats : all) {
+      total.poseSamples += stats.poseSamples;
+      totalDivergence += stats.meanPoseDivergence * stats.poseSamples;
+      total.maxPoseDivergence = Math.max(total.maxPoseDivergence, stats.maxPoseDivergence);
+      total.maxHeadingDivergence = Math.max(total.maxHeadingDivergence, stats.maxHeadingDivergence);
+      total.realVisionPoses += stats.realVisionPoses;
+      total.realVisionAccepted += stats.realVisionAccepted;
+      total.replayVisionPoses += stats.replayVisionPoses;
+      total.replayVisionAccepted += stats.replayVisionAccepted;
+    }
+    if (total.poseSamples > 0) {
+      total.meanPoseDivergence = totalDivergence / total.poseSamples;
+    }
+    total.updateRates();
+    return total;
+  }
+
+  private void updateRates() {
+    realAcceptRate = realVisionPoses > 0 ? (double) realVisionAccepted / realVisionPoses : 0;
+    replayAcceptRate =
+        replayVisionPoses > 0 ? (double) replayVisionAccepted / replayVisionPoses : 0;
+  }
+
+  /**
+   * @return The number of poses in a Pose3d struct array record
+   */
+  private static int poseCount(DataLogRecord record) {
+    return record.getRaw().length / Pose3d.struct.getSize();
+  }
+
+  private static ByteBuffer buffer(byte[] raw) {
+    return ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
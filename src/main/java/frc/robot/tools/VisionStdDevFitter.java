@@ -0,0 +1,372 @@
+package frc.robot.tools;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.util.datalog.DataLogReader;
+import edu.wpi.first.util.datalog.DataLogRecord;
+import frc.robot.Constants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.subsystems.drivebase.SwervePoseEstimator;
+import frc.robot.subsystems.vision.VisionStdDevModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Fits the {@link VisionStdDevModel} table from match logs.
+ *
+ * <p>Each logged {@code Vision/Camera{i}/RobotPoses} pose is compared with a reference pose that
+ * has none of the camera's recent observations fused in. {@code Swerve/Pose} itself cannot be used,
+ * since it has already been pulled towards those observations and would make the error look
+ * smaller than it is. The reference is {@code Swerve/Pose} from a couple of seconds earlier, moved
+ * forward by the odometry-only displacement since then, which is dead-reckoned from the logged
+ * {@code Swerve/Odometry} inputs. Observations are only used if the robot has moved far enough in
+ * that time that the earlier pose was fused from a different view of the tags. Odometry drift over
+ * the window adds to the fitted error, so the table errs on the side of trusting vision less.
+ *
+ * <p>Only loops where the robot is nearly stopped are used, since the vision pose is from when the
+ * frame was captured and the reference pose is from the end of the loop. Tag count,
+ * distance and angle of incidence come from the camera's {@code TagIds} input, so loops where a
+ * camera made more than one observation are skipped. The standard deviation of each bucket is the
+ * RMS error of its samples, after dropping gross outliers.
+ *
+ * <p>Run with "./gradlew fitVisionStdDevs -Plogs=first.wpilog,second.wpilog".
+ */
+public class VisionStdDevFitter {
+
+  // Camera transforms, in the order Robot passes cameras to ApriltagCameras
+  private static final Transform3d[] robotToCameras = {
+    VisionConstants.WhiteReefInfo.robotToCamera, VisionConstants.BlackReefInfo.robotToCamera
+  };
+
+  private static final double[] distanceEdges = {1.0, 1.5, 2.0, 3.0, 4.0}; // Meters
+  private static final double[] angleEdges = {0.35, 0.7, 1.05}; // Radians, 20, 40, 60 degrees
+  private static final int maxTagCount = 3;
+  private static final int minSamples = 20;
+
+  private static final double maxSpeed = 0.25; // Meters per second, to count as stopped
+  private static final double speedWindow = 0.1; // Seconds
+  private static final double maxLinearError = 1.0; // Meters, larger errors are outliers
+  private static final double anchorAge = 2.0; // Seconds, age of the fused pose the reference uses
+  private static final double minAnchorTravel = 1.0; // Meters, since the fused pose was taken
+
+  private static final String poseKey = "RealOutputs/Swerve/Pose";
+  private static final String odometryKey = "Swerve/Odometry/";
+
+  /**
+   * @param args The output file, then the logs to fit from
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: VisionStdDevFitter <output.json> <log.wpilog>...");
+      System.exit(1);
+    }
+
+    int tagBuckets = maxTagCount;
+    int distanceBuckets = distanceEdges.length + 1;
+    int angleBuckets = angleEdges.length + 1;
+    int cellCount = robotToCameras.length * tagBuckets * distanceBuckets * angleBuckets;
+    int[] samples = new int[cellCount];
+    double[] linearSquares = new double[cellCount];
+    double[] angularSquares = new double[cellCount];
+    int outliers = 0;
+
+    for (int i = 1; i < args.length; i++) {
+      Log log = Log.read(args[i]);
+      System.out.println("Read " + args[i]);
+
+      for (int camera = 0; camera < robotToCameras.length; camera++) {
+        for (var entry : log.robotPoses.get(camera).entrySet()) {
+          long time = entry.getKey();
+          Pose3d[] poses = entry.getValue();
+          var tagIds = log.tagIds.get(camera).floorEntry(time);
+          Pose2d odometry = sample(log.odometryPoses, time);
+          Pose2d previousOdometry = sample(log.odometryPoses, time - (long) (speedWindow * 1e6));
+          if (poses.length != 1 || tagIds == null || odometry == null || previousOdometry == null) {
+            continue;
+          }
+          double speed =
+              odometry.getTranslation().getDistance(previousOdometry.getTranslation())
+                  / speedWindow;
+          if (speed > maxSpeed) {
+            continue;
+          }
+          Pose2d pose = referencePose(log, time, odometry);
+          if (pose == null) {
+            continue;
+          }
+
+          Pose3d visionPose = poses[0];
+          int[] ids = tagIds.getValue();
+          double distance = averageTagDistance(visionPose, robotToCameras[camera], ids);
+          double angle =
+              VisionStdDevModel.angleOfIncidence(visionPose, robotToCameras[camera], ids);
+          if (Double.isNaN(distance) || Double.isNaN(angle)) {
+            continue;
+          }
+
+          double dx = visionPose.getX() - pose.getX();
+          double dy = visionPose.getY() - pose.getY();
+          double dTheta =
+              MathUtil.angleModulus(
+                  visionPose.getRotation().getZ() - pose.getRotation().getRadians());
+          if (Math.hypot(dx, dy) > maxLinearError) {
+            outliers++;
+            continue;
+          }
+
+          int tags = Math.min(ids.length, maxTagCount) - 1;
+          int cell =
+              ((camera * tagBuckets + tags) * distanceBuckets
+                          + VisionStdDevModel.bucket(distance, distanceEdges))
+                      * angleBuckets
+                  + VisionStdDevModel.bucket(angle, angleEdges);
+          samples[cell]++;
+          linearSquares[cell] += (dx * dx + dy * dy) / 2.0; // Per axis
+          angularSquares[cell] += dTheta * dTheta;
+        }
+      }
+    }
+
+    VisionStdDevModel.Table table = new VisionStdDevModel.Table();
+    table.distanceEdges = distanceEdges;
+    table.angleEdges = angleEdges;
+    table.maxTagCount = maxTagCount;
+    table.minSamples = minSamples;
+    int fitted = 0;
+    for (int cell = 0; cell < cellCount; cell++) {
+      if (samples[cell] == 0) {
+        continue;
+      }
+      VisionStdDevModel.Cell fit = new VisionStdDevModel.Cell();
+      fit.angleBucket = cell % angleBuckets;
+      fit.distanceBucket = (cell / angleBuckets) % distanceBuckets;
+      fit.tagCount = (cell / angleBuckets / distanceBuckets) % tagBuckets + 1;
+      fit.camera = cell / angleBuckets / distanceBuckets / tagBuckets;
+      fit.samples = samples[cell];
+      fit.linearStdDev = Math.sqrt(linearSquares[cell] / samples[cell]);
+      fit.angularStdDev = Math.sqrt(angularSquares[cell] / samples[cell]);
+      table.cells.add(fit);
+      if (fit.samples >= minSamples) {
+        fitted++;
+      }
+    }
+
+    VisionStdDevModel.write(new File(args[0]), table);
+    System.out.println(
+        "Wrote "
+            + args[0]
+            + ": "
+            + fitted
+            + " of "
+            + table.cells.size()
+            + " buckets with enough samples, "
+            + outliers
+            + " outliers dropped");
+  }
+
+  /**
+   * @return The average 3D distance from the camera to the tags, or NaN if none are in the layout
+   */
+  private static double averageTagDistance(
+      Pose3d robotPose, Transform3d robotToCamera, int[] tagIds) {
+    Pose3d cameraPose = robotPose.transformBy(robotToCamera);
+    double total = 0;
+    int count = 0;
+    for (int id : tagIds) {
+      Pose3d tagPose = VisionConstants.kReefTagTable.getPose(id);
+      if (tagPose != null) {
+        total += cameraPose.getTranslation().getDistance(tagPose.getTranslation());
+        count++;
+      }
+    }
+    return count == 0 ? Double.NaN : total / count;
+  }
+
+  /**
+   * Dead-reckons the fused pose from {@link #anchorAge} earlier to the time, using only odometry.
+   *
+   * @param odometry The odometry-only pose at the time
+   * @return The reference pose, or null if there is no earlier pose or the robot has not moved
+   *     enough since then for it to be independent of the current view
+   */
+  private static Pose2d referencePose(Log log, long time, Pose2d odometry) {
+    long anchorTime = time - (long) (anchorAge * 1e6);
+    Pose2d anchor = sample(log.poses, anchorTime);
+    Pose2d anchorOdometry = sample(log.odometryPoses, anchorTime);
+    if (anchor == null || anchorOdometry == null) {
+      return null;
+    }
+    Transform2d travel = odometry.minus(anchorOdometry);
+    if (travel.getTranslation().getNorm() < minAnchorTravel) {
+      return null;
+    }
+    return anchor.plus(travel);
+  }
+
+  /**
+   * @return The last pose logged at or before the time, or null if there is none
+   */
+  private static Pose2d sample(TreeMap<Long, Pose2d> poses, long time) {
+    var entry = poses.floorEntry(time);
+    return entry == null ? null : entry.getValue();
+  }
+
+  /** The entries needed from one log, keyed by timestamp in microseconds. */
+  private static class Log {
+    final TreeMap<Long, Pose2d> poses = new TreeMap<>();
+    final TreeMap<Long, Pose2d> odometryPoses = new TreeMap<>(); // Never corrected by vision
+    final List<TreeMap<Long, Pose3d[]>> robotPoses = new ArrayList<>();
+    final List<TreeMap<Long, int[]>> tagIds = new ArrayList<>();
+
+    static Log read(String path) throws IOException {
+      DataLogReader reader = new DataLogReader(path);
+      if (!reader.isValid()) {
+        throw new IOException(path + " is not a valid WPILOG");
+      }
+
+      Log log = new Log();
+      Map<String, TreeMap<Long, Pose3d[]>> robotPosesByKey = new HashMap<>();
+      Map<String, TreeMap<Long, int[]>> tagIdsByKey = new HashMap<>();
+      for (int camera = 0; camera < robotToCameras.length; camera++) {
+        log.robotPoses.add(new TreeMap<>());
+        log.tagIds.add(new TreeMap<>());
+        robotPosesByKey.put(
+            "RealOutputs/Vision/Camera" + camera + "/RobotPoses", log.robotPoses.get(camera));
+        tagIdsByKey.put("Vision/Camera" + camera + "/TagIds", log.tagIds.get(camera));
+      }
+
+      // Entry IDs are assigned by start records, AdvantageKit keys may have a leading slash
+      Map<Integer, TreeMap<Long, Pose3d[]>> robotPosesById = new HashMap<>();
+      Map<Integer, TreeMap<Long, int[]>> tagIdsById = new HashMap<>();
+      Map<String, TreeMap<Long, double[]>> odometryByKey = new HashMap<>();
+      for (String input :
+          new String[] {"Timestamps", "YawPositions", "DrivePositions", "TurnPositions"}) {
+        odometryByKey.put(odometryKey + input, new TreeMap<>());
+      }
+      Map<Integer, TreeMap<Long, double[]>> odometryById = new HashMap<>();
+      int poseId = -1;
+      for (DataLogRecord record : reader) {
+        if (record.isStart()) {
+          var start = record.getStartData();
+          String name = start.name.startsWith("/") ? start.name.substring(1) : start.name;
+          if (name.equals(poseKey)) {
+            poseId = start.entry;
+          } else if (robotPosesByKey.containsKey(name)) {
+            robotPosesById.put(start.entry, robotPosesByKey.get(name));
+          } else if (tagIdsByKey.containsKey(name)) {
+            tagIdsById.put(start.entry, tagIdsByKey.get(name));
+          } else if (odometryByKey.containsKey(name)) {
+            odometryById.put(start.entry, odometryByKey.get(name));
+          }
+        } else if (!record.isControl()) {
+          int id = record.getEntry();
+          long time = record.getTimestamp();
+          if (id == poseId) {
+            log.poses.put(time, Pose2d.struct.unpack(buffer(record.getRaw())));
+          } else if (robotPosesById.containsKey(id)) {
+            ByteBuffer buffer = buffer(record.getRaw());
+            Pose3d[] poses = new Pose3d[buffer.remaining() / Pose3d.struct.getSize()];
+            for (int i = 0; i < poses.length; i++) {
+              poses[i] = Pose3d.struct.unpack(buffer);
+            }
+            robotPosesById.get(id).put(time, poses);
+          } else if (tagIdsById.containsKey(id)) {
+            int[] ids = Arrays.stream(record.getIntegerArray()).mapToInt(v -> (int) v).toArray();
+            tagIdsById.get(id).put(time, ids);
+          } else if (odometryById.containsKey(id)) {
+            odometryById.get(id).put(time, record.getDoubleArray());
+          }
+        }
+      }
+      log.integrateOdometry(
+          odometryByKey.get(odometryKey + "Timestamps"),
+          odometryByKey.get(odometryKey + "YawPositions"),
+          odometryByKey.get(odometryKey + "DrivePositions"),
+          odometryByKey.get(odometryKey + "TurnPositions"));
+      return log;
+    }
+
+    /**
+     * Integrates the logged odometry frames into an odometry-only pose at the end of each loop.
+     * Inputs are only logged when they change, so each loop uses the latest value of every input.
+     */
+    private void integrateOdometry(
+        TreeMap<Long, double[]> timestamps,
+        TreeMap<Long, double[]> yaws,
+        TreeMap<Long, double[]> drives,
+        TreeMap<Long, double[]> turns) {
+      int moduleCount = Constants.Swerve.moduleTranslations.length;
+      double[] driveDistances = new double[moduleCount];
+      double[] turnAngles = new double[moduleCount];
+      SwervePoseEstimator odometry = null;
+      double lastTimestamp = Double.NEGATIVE_INFINITY;
+
+      for (var entry : timestamps.entrySet()) {
+        long time = entry.getKey();
+        var yaw = yaws.floorEntry(time);
+        var drive = drives.floorEntry(time);
+        var turn = turns.floorEntry(time);
+        if (yaw == null || drive == null || turn == null) {
+          continue;
+        }
+        double[] frameTimestamps = entry.getValue();
+        int frameCount =
+            Math.min(
+                Math.min(frameTimestamps.length, yaw.getValue().length),
+                Math.min(drive.getValue().length, turn.getValue().length) / moduleCount);
+
+        for (int i = 0; i < frameCount; i++) {
+          if (frameTimestamps[i] < lastTimestamp) {
+            continue; // Repeated from an earlier loop
+          }
+          lastTimestamp = frameTimestamps[i];
+          for (int module = 0; module < moduleCount; module++) {
+            driveDistances[module] = drive.getValue()[i * moduleCount + module];
+            turnAngles[module] =
+                Units.rotationsToRadians(turn.getValue()[i * moduleCount + module]);
+          }
+          double yawRadians = Units.degreesToRadians(yaw.getValue()[i]);
+          if (odometry == null) {
+            SwerveModulePosition[] positions = new SwerveModulePosition[moduleCount];
+            for (int module = 0; module < moduleCount; module++) {
+              positions[module] =
+                  new SwerveModulePosition(
+                      driveDistances[module], Rotation2d.fromRadians(turnAngles[module]));
+            }
+            odometry =
+                new SwervePoseEstimator(
+                    Constants.Swerve.moduleTranslations,
+                    Rotation2d.fromRadians(yawRadians),
+                    positions,
+                    Pose2d.kZero,
+                    VecBuilder.fill(1.0, 1.0, 1.0),
+                    VecBuilder.fill(1.0, 1.0, 1.0));
+          }
+          odometry.updateWithTime(frameTimestamps[i], yawRadians, driveDistances, turnAngles);
+        }
+        if (odometry != null) {
+          odometryPoses.put(time, odometry.getEstimatedPosition());
+        }
+      }
+    }
+
+    private static ByteBuffer buffer(byte[] raw) {
+      return ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+}
@@ -0,0 +1,321 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
+import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
+import edu.wpi.first.math.trajectory.TrapezoidProfile.State;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants;
+import frc.robot.subsystems.drivebase.Swerve;
+import java.util.function.Supplier;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Drives to a pose along a short trajectory generated on the fly, an alternative to {@link
+ * DriveToPose}.
+ *
+ * <p>The trajectory is a straight line profile for translation and a profile for heading that end
+ * at the same time. A module's speed is at most the linear speed plus the angular speed times the
+ * module's distance from the center, so the linear and angular profiles split {@link
+ * Constants.Swerve#maxLinearSpeed} and {@link Constants.Swerve#maxLinearAcceleration} between them.
+ * The angular share is a fraction of {@link Constants.Swerve#maxAngularSpeed}, so it never turns
+ * faster than the drivebase allows. The split is found by bisection so both take the same time,
+ * which makes the pair the fastest that keeps every module within its limits. That is a few dozen
+ * closed form profile evaluations, well under a millisecond, so the trajectory is regenerated from
+ * the current setpoint whenever the target moves.
+ *
+ * <p>The trajectory is tracked like a Choreo trajectory, see {@link Swerve#followSetpoint}.
+ * Velocity across the line at the start is left to the feedback.
+ */
+public class AlignTrajectory extends Command {
+
+  private static final double moduleRadius =
+      Math.hypot(Constants.Swerve.trackWidthX / 2, Constants.Swerve.trackWidthY / 2);
+  private static final double minBudget = 0.05; // Smallest fraction of the limits for either side
+  private static final int searchIterations = 20;
+  private static final double retargetDistance = 0.02; // Meters
+  private static final double retargetAngle = Math.toRadians(1);
+
+  private final Swerve drive;
+  private final Supplier<Pose2d> target;
+  private final double tTol;
+  private final double rTol;
+  private final Trajectory trajectory;
+
+  private Pose2d goal = Pose2d.kZero;
+  private double startTime = 0.0;
+
+  private double driveErrorAbs = 0.0;
+  private double thetaErrorAbs = 0.0;
+
+  /**
+   * @param drive The drivebase
+   * @param target The pose to drive to, may change while driving
+   * @param tTol The translation tolerance in meters
+   * @param rTol The rotation tolerance in radians
+   * @param tCon Translation limits, on top of the drivebase's
+   * @param rCon Rotation limits, on top of the drivebase's
+   */
+  public AlignTrajectory(
+      Swerve drive,
+      Supplier<Pose2d> target,
+      double tTol,
+      double rTol,
+      Constraints tCon,
+      Constraints rCon) {
+    this.drive = drive;
+    this.target = target;
+    this.tTol = tTol;
+    this.rTol = rTol;
+    this.trajectory = new Trajectory(tCon, rCon);
+
+    addRequirements(drive);
+  }
+
+  @Override
+  public void initialize() {
+    Pose2d currentPose = drive.getPose();
+    ChassisSpeeds fieldVelocity = drive.getVelocityFieldRelative();
+    generate(
+        currentPose.getX(),
+        currentPose.getY(),
+        currentPose.getRotation().getRadians(),
+        fieldVelocity.vxMetersPerSecond,
+        fieldVelocity.vyMetersPerSecond,
+        fieldVelocity.omegaRadiansPerSecond,
+        target.get(),
+        Timer.getTimestamp());
+  }
+
+  @Override
+  public void execute() {
+    double time = Timer.getTimestamp();
+
+    // Regenerate from where the robot should be if the target moved
+    Pose2d targetPose = target.get();
+    if (targetPose.getTranslation().getDistance(goal.getTranslation()) > retargetDistance
+        || Math.abs(targetPose.getRotation().minus(goal.getRotation()).getRadians())
+            > retargetAngle) {
+      generate(
+          trajectory.setpointX,
+          trajectory.setpointY,
+          trajectory.setpointHeading,
+          trajectory.setpointVx,
+          trajectory.setpointVy,
+          trajectory.setpointOmega,
+          targetPose,
+          time);
+    }
+
+    double t = time - startTime;
+    trajectory.sample(t);
+    drive.followSetpoint(
+        trajectory.setpointX,
+        trajectory.setpointY,
+        trajectory.setpointHeading,
+        trajectory.setpointVx,
+        trajectory.setpointVy,
+        trajectory.setpointOmega);
+
+    Pose2d currentPose = drive.getPose();
+    Pose2d poseError = currentPose.relativeTo(goal);
+    driveErrorAbs = poseError.getTranslation().getNorm();
+    thetaErrorAbs = Math.abs(poseError.getRotation().getRadians());
+
+    // Log data
+    Logger.recordOutput("AlignTrajectory/DistanceMeasured", driveErrorAbs);
+    Logger.recordOutput("AlignTrajectory/ThetaError", thetaErrorAbs);
+    Logger.recordOutput(
+        "AlignTrajectory/TimeRemaining", Math.max(trajectory.getDuration() - t, 0.0));
+    Logger.recordOutput(
+        "AlignTrajectory/Setpoint",
+        new Pose2d[] {
+          new Pose2d(
+              trajectory.setpointX,
+              trajectory.setpointY,
+              Rotation2d.fromRadians(trajectory.setpointHeading))
+        });
+    Logger.recordOutput("AlignTrajectory/Goal", new Pose2d[] {goal});
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    drive.drive(new ChassisSpeeds());
+    Logger.recordOutput("AlignTrajectory/Setpoint", new Pose2d[] {});
+    Logger.recordOutput("AlignTrajectory/Goal", new Pose2d[] {});
+  }
+
+  @Override
+  public boolean isFinished() {
+    return Timer.getTimestamp() - startTime >= trajectory.getDuration()
+        && driveErrorAbs <= tTol
+        && thetaErrorAbs <= rTol;
+  }
+
+  /** Generates a trajectory from the state to the goal, starting at the time. */
+  private void generate(
+      double x,
+      double y,
+      double heading,
+      double vx,
+      double vy,
+      double omega,
+      Pose2d goal,
+      double time) {
+    this.goal = goal;
+    startTime = time;
+    trajectory.generate(x, y, heading, vx, vy, omega, goal);
+
+    Logger.recordOutput("AlignTrajectory/Duration", trajectory.getDuration());
+    Logger.recordOutput("AlignTrajectory/LinearBudget", trajectory.getBudget());
+  }
+
+  /** The translation and heading profiles of one generated trajectory, and its last setpoint. */
+  static class Trajectory {
+
+    private final Constraints tCon;
+    private final Constraints rCon;
+
+    private double budget = 0.0;
+    private double translationTime = 0.0;
+    private double rotationTime = 0.0;
+
+    // The translation profile runs from zero to the distance along the line
+    private double startX = 0.0;
+    private double startY = 0.0;
+    private double directionX = 0.0;
+    private double directionY = 0.0;
+    private TrapezoidProfile translationProfile;
+    private State translationStart = new State();
+    private State translationGoal = new State();
+    private TrapezoidProfile rotationProfile;
+    private State rotationStart = new State();
+    private State rotationGoal = new State();
+
+    // The last setpoint, field relative
+    double setpointX = 0.0;
+    double setpointY = 0.0;
+    double setpointHeading = 0.0;
+    double setpointVx = 0.0;
+    double setpointVy = 0.0;
+    double setpointOmega = 0.0;
+
+    /**
+     * @param tCon Translation limits, on top of the drivebase's
+     * @param rCon Rotation limits, on top of the drivebase's
+     */
+    Trajectory(Constraints tCon, Constraints rCon) {
+      this.tCon = tCon;
+      this.rCon = rCon;
+    }
+
+    /** Generates a trajectory from the state to the goal. */
+    void generate(
+        double x, double y, double heading, double vx, double vy, double omega, Pose2d goal) {
+      double dx = goal.getX() - x;
+      double dy = goal.getY() - y;
+      double distance = Math.hypot(dx, dy);
+      startX = x;
+      startY = y;
+      directionX = distance > 1e-6 ? dx / distance : 0.0;
+      directionY = distance > 1e-6 ? dy / distance : 0.0;
+      translationStart = new State(0.0, vx * directionX + vy * directionY);
+      translationGoal = new State(distance, 0.0);
+
+      double headingGoal =
+          heading + MathUtil.angleModulus(goal.getRotation().getRadians() - heading);
+      rotationStart = new State(heading, omega);
+      rotationGoal = new State(headingGoal, 0.0);
+
+      // Translation time falls and rotation time rises with the translation's share of the
+      // limits, the fastest split is where they meet
+      double low = minBudget;
+      double high = 1.0 - minBudget;
+      for (int i = 0; i < searchIterations; i++) {
+        double budget = (low + high) / 2;
+        double translationTime =
+            profileTime(translationProfile(budget), translationStart, translationGoal);
+        double rotationTime = profileTime(rotationProfile(budget), rotationStart, rotationGoal);
+        if (translationTime > rotationTime) {
+          low = budget;
+        } else {
+          high = budget;
+        }
+      }
+      budget = (low + high) / 2;
+      translationProfile = translationProfile(budget);
+      rotationProfile = rotationProfile(budget);
+      translationTime = profileTime(translationProfile, translationStart, translationGoal);
+      rotationTime = profileTime(rotationProfile, rotationStart, rotationGoal);
+    }
+
+    /**
+     * Moves the setpoint to a time along the trajectory.
+     *
+     * @param t Seconds since the trajectory was generated
+     */
+    void sample(double t) {
+      State translation = translationProfile.calculate(t, translationStart, translationGoal);
+      State rotation = rotationProfile.calculate(t, rotationStart, rotationGoal);
+      setpointX = startX + directionX * translation.position;
+      setpointY = startY + directionY * translation.position;
+      setpointVx = directionX * translation.velocity;
+      setpointVy = directionY * translation.velocity;
+      setpointHeading = rotation.position;
+      setpointOmega = rotation.velocity;
+    }
+
+    /**
+     * @return The time until both profiles end, in seconds
+     */
+    double getDuration() {
+      return Math.max(translationTime, rotationTime);
+    }
+
+    double getTranslationTime() {
+      return translationTime;
+    }
+
+    double getRotationTime() {
+      return rotationTime;
+    }
+
+    /**
+     * @return The fraction of the drivebase's limits given to translation
+     */
+    double getBudget() {
+      return budget;
+    }
+
+    /**
+     * @param budget The fraction of the drivebase's limits given to translation
+     */
+    private TrapezoidProfile translationProfile(double budget) {
+      return new TrapezoidProfile(
+          new Constraints(
+              Math.min(budget * Constants.Swerve.maxLinearSpeed, tCon.maxVelocity),
+              Math.min(budget * Constants.Swerve.maxLinearAcceleration, tCon.maxAcceleration)));
+    }
+
+    /**
+     * @param budget The fraction of the drivebase's limits given to translation
+     */
+    private TrapezoidProfile rotationProfile(double budget) {
+      return new TrapezoidProfile(
+          new Constraints(
+              Math.min((1 - budget) * Constants.Swerve.maxAngularSpeed, rCon.maxVelocity),
+              Math.min(
+                  (1 - budget) * Constants.Swerve.maxLinearAcceleration / moduleRadius,
+                  rCon.maxAcceleration)));
+    }
+
+    private static double profileTime(TrapezoidProfile profile, State start, State goal) {
+      profile.calculate(0.0, start, goal);
+      return profile.totalTime();
+    }
+  }
+}
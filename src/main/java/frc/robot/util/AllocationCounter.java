@@ -0,0 +1,30 @@
+package frc.robot.util;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads how many bytes the current thread has allocated, for catching allocation regressions in
+ * hot paths. Returns zero on JVMs that do not support per-thread allocation tracking.
+ */
+public final class AllocationCounter {
+
+  private static final com.sun.management.ThreadMXBean threadBean = findThreadBean();
+
+  private AllocationCounter() {}
+
+  private static com.sun.management.ThreadMXBean findThreadBean() {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+        && bean.isThreadAllocatedMemorySupported()) {
+      bean.setThreadAllocatedMemoryEnabled(true);
+      return bean;
+    }
+    return null;
+  }
+
+  /**
+   * @return The total bytes allocated by the calling thread, only meaningful as a difference
+   */
+  public static long getCurrentThreadAllocatedBytes() {
+    return threadBean == null ? 0 : threadBean.getCurrentThreadAllocatedBytes();
+  }
+}
@@ -0,0 +1,174 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.littletonrobotics.junction.Logger;
+
+/**
+ * Wall time profiler for the stages of the robot loop (subsystem periodics, IO updates, input
+ * logging and command execution).
+ *
+ * <p>Code under a stage is bracketed with {@link Stage#start()} and {@link Stage#stop(long)}. Time
+ * is summed over every run of a stage in a loop, and {@link #endLoop()} moves each loop's total
+ * into a rolling window. The p50, p99 and max of each window are logged under {@code LoopProfile/}
+ * once per report period. When disabled, {@link Stage#start()} only reads a static flag.
+ */
+public final class LoopProfiler {
+
+  private static final int windowSize = 250; // Loops, 5 seconds at 50Hz
+  private static final int reportPeriod = 50; // Loops between logged statistics
+
+  private static boolean enabled = false;
+  private static final List<Stage> stages = new ArrayList<>();
+  private static final Map<String, Stage> stagesByName = new HashMap<>();
+  private static final long[] sortScratch = new long[windowSize];
+  private static int loopsSinceReport = 0;
+
+  // Command execution is timed between scheduler callbacks, see trackCommands()
+  private static final Map<String, Stage> commandStages = new HashMap<>();
+  private static long lastCommandMark = 0;
+
+  private LoopProfiler() {}
+
+  /** A named part of the loop whose wall time is tracked. */
+  public static final class Stage {
+
+    private final String p50Key;
+    private final String p99Key;
+    private final String maxKey;
+    private final long[] window = new long[windowSize]; // Nanoseconds per loop
+    private int windowCount = 0;
+    private int windowIndex = 0;
+    private long loopNanos = 0;
+    private boolean ranThisLoop = false;
+
+    private Stage(String name) {
+      String prefix = "LoopProfile/" + name + "/";
+      p50Key = prefix + "P50Ms";
+      p99Key = prefix + "P99Ms";
+      maxKey = prefix + "MaxMs";
+    }
+
+    /**
+     * @return The start time to pass to {@link #stop(long)}, or 0 when profiling is disabled
+     */
+    public long start() {
+      return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since {@code startNanos} to this loop's total for the stage.
+     *
+     * @param startNanos The value returned by {@link #start()}
+     */
+    public void stop(long startNanos) {
+      if (startNanos != 0) {
+        add(System.nanoTime() - startNanos);
+      }
+    }
+
+    private void add(long nanos) {
+      loopNanos += nanos;
+      ranThisLoop = true;
+    }
+
+    private void endLoop() {
+      if (!ranThisLoop) {
+        return;
+      }
+      window[windowIndex] = loopNanos;
+      windowIndex = (windowIndex + 1) % windowSize;
+      windowCount = Math.min(windowCount + 1, windowSize);
+      loopNanos = 0;
+      ranThisLoop = false;
+    }
+
+    private void report() {
+      if (windowCount == 0) {
+        return;
+      }
+      System.arraycopy(window, 0, sortScratch, 0, windowCount);
+      Arrays.sort(sortScratch, 0, windowCount);
+      Logger.recordOutput(p50Key, sortScratch[(windowCount - 1) / 2] / 1e6);
+      Logger.recordOutput(p99Key, sortScratch[(int) ((windowCount - 1) * 0.99)] / 1e6);
+      Logger.recordOutput(maxKey, sortScratch[windowCount - 1] / 1e6);
+    }
+  }
+
+  /**
+   * @param name The log name of the stage, e.g. "Swerve/Periodic"
+   * @return The stage with this name, created on first use
+   */
+  public static Stage stage(String name) {
+    Stage stage = stagesByName.get(name);
+    if (stage == null) {
+      stage = new Stage(name);
+      stagesByName.put(name, stage);
+      stages.add(stage);
+    }
+    return stage;
+  }
+
+  /**
+   * @param enable Whether stages should record time
+   */
+  public static void setEnabled(boolean enable) {
+    enabled = enable;
+  }
+
+  /**
+   * @return Whether stages are recording time
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Times each scheduled command's {@code execute()} as "Commands/{name}". Call once after all
+   * trigger bindings are created.
+   *
+   * <p>The scheduler reports each command after it executes, so a command's time runs from the
+   * previous report, or from the end of the button loop for the first command. This includes the
+   * previous command's {@code isFinished()}, which is expected to be trivial.
+   */
+  public static void trackCommands() {
+    CommandScheduler scheduler = CommandScheduler.getInstance();
+    scheduler.getDefaultButtonLoop().bind(() -> lastCommandMark = System.nanoTime());
+    scheduler.onCommandExecute(LoopProfiler::commandExecuted);
+  }
+
+  private static void commandExecuted(Command command) {
+    if (!enabled) {
+      return;
+    }
+    long now = System.nanoTime();
+    Stage stage = commandStages.get(command.getName());
+    if (stage == null) {
+      stage = stage("Commands/" + command.getName());
+      commandStages.put(command.getName(), stage);
+    }
+    stage.add(now - lastCommandMark);
+    lastCommandMark = now;
+  }
+
+  /** Closes out the loop for every stage and logs statistics once per report period. */
+  public static void endLoop() {
+    if (!enabled) {
+      return;
+    }
+    for (int i = 0; i < stages.size(); i++) {
+      stages.get(i).endLoop();
+    }
+    if (++loopsSinceReport >= reportPeriod) {
+      loopsSinceReport = 0;
+      for (int i = 0; i < stages.size(); i++) {
+        stages.get(i).report();
+      }
+    }
+  }
+}
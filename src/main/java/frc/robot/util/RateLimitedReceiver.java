@@ -0,0 +1,105 @@
+package frc.robot.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.littletonrobotics.junction.LogDataReceiver;
+import org.littletonrobotics.junction.LogTable;
+import org.littletonrobotics.junction.LogTable.LogValue;
+
+/**
+ * Forwards only some of each cycle's values to another receiver, meant for the NetworkTables
+ * publisher so dashboards get less traffic while the log file still gets every value.
+ *
+ * <p>Keys under a rate limited prefix are forwarded at most once per period, other keys every
+ * cycle. Each cycle gets a new table, since the publisher keeps the last one to find changed
+ * values. A key held back by its limit carries the value last forwarded, which the publisher skips
+ * as unchanged. Every cycle's table holds every key, so a value held back is still forwarded once
+ * the period has passed. Runs on AdvantageKit's receiver thread, not in the robot loop.
+ */
+public class RateLimitedReceiver implements LogDataReceiver {
+
+  private final LogDataReceiver receiver;
+  private final List<String> prefixes = new ArrayList<>();
+  private final List<Long> periods = new ArrayList<>(); // Microseconds
+  private final Map<String, KeyState> keys = new HashMap<>(); // By key in the logged table
+
+  /** A key's rate limit and what was last forwarded. */
+  private static class KeyState {
+    final String key; // Without the leading slash
+    final long period;
+    long lastTimestamp;
+    LogValue lastValue;
+
+    KeyState(String key, long period) {
+      this.key = key;
+      this.period = period;
+    }
+  }
+
+  /**
+   * @param receiver The receiver to forward to
+   */
+  public RateLimitedReceiver(LogDataReceiver receiver) {
+    this.receiver = receiver;
+  }
+
+  /**
+   * Limits how often keys under a prefix are forwarded. The longest matching prefix is used.
+   *
+   * @param prefix The key prefix, e.g. "RealOutputs/AutoAim/"
+   * @param periodSeconds The minimum time between forwarded values of each key
+   * @return This, for chaining
+   */
+  public RateLimitedReceiver limit(String prefix, double periodSeconds) {
+    prefixes.add(prefix);
+    periods.add((long) (periodSeconds * 1e6));
+    return this;
+  }
+
+  @Override
+  public void start() {
+    receiver.start();
+  }
+
+  @Override
+  public void end() {
+    receiver.end();
+  }
+
+  @Override
+  public void putTable(LogTable table) throws InterruptedException {
+    long timestamp = table.getTimestamp();
+    LogTable forwarded = new LogTable(timestamp);
+    for (var entry : table.getAll(false).entrySet()) {
+      KeyState state = keys.get(entry.getKey());
+      if (state == null) {
+        String key = entry.getKey().startsWith("/") ? entry.getKey().substring(1) : entry.getKey();
+        state = new KeyState(key, periodFor(key));
+        keys.put(entry.getKey(), state);
+      }
+      if (state.lastValue == null || timestamp - state.lastTimestamp >= state.period) {
+        state.lastTimestamp = timestamp;
+        state.lastValue = entry.getValue();
+      }
+      forwarded.put(state.key, state.lastValue);
+    }
+    receiver.putTable(forwarded);
+  }
+
+  /**
+   * @return The rate limit of the key in microseconds, or 0 if it has none
+   */
+  private long periodFor(String key) {
+    int longest = -1;
+    long period = 0;
+    for (int i = 0; i < prefixes.size(); i++) {
+      if (key.startsWith(prefixes.get(i)) && prefixes.get(i).length() > longest) {
+        longest = prefixes.get(i).length();
+        period = periods.get(i);
+      }
+    }
+    return period;
+  }
+}
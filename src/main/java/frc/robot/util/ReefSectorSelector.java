@@ -0,0 +1,55 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.Constants.AutoConstants;
+
+/**
+ * Picks the reef sector to aim at from where the robot is heading, not just where it is.
+ *
+ * <p>The pose is projected ahead by the field velocity times the estimated time to reach the
+ * sector, capped at {@link AutoConstants#reefLeadMaxTime}. The time is the distance to the sector
+ * middle over {@link AutoConstants#reefLeadSpeed}. Once a sector is picked, the projected point
+ * has to move {@link AutoConstants#reefSectorHysteresis} past the sector's edge before another is
+ * picked, so the target does not flip back and forth (restarting the drive profile) near an edge.
+ */
+public class ReefSectorSelector {
+
+  private static final double halfSectorAngle = Math.PI / 6;
+
+  private ReefTargets targets = null;
+  private int sector = -1;
+
+  /**
+   * @param targets The reef targets of the current alliance
+   * @param pose The robot pose
+   * @param fieldVelocity The field relative robot velocity
+   * @return The index of the sector to aim at
+   */
+  public int select(ReefTargets targets, Pose2d pose, ChassisSpeeds fieldVelocity) {
+    int current = targets == this.targets ? sector : targets.nearestSector(pose);
+
+    // Lead the pose by the time to reach the current sector
+    Pose2d middle = targets.get(ReefTargets.Target.MIDDLE, current);
+    double distance = Math.hypot(middle.getX() - pose.getX(), middle.getY() - pose.getY());
+    double leadTime =
+        Math.min(distance / AutoConstants.reefLeadSpeed, AutoConstants.reefLeadMaxTime);
+    double x = pose.getX() + fieldVelocity.vxMetersPerSecond * leadTime;
+    double y = pose.getY() + fieldVelocity.vyMetersPerSecond * leadTime;
+
+    if (targets != this.targets
+        || targets.angleToSector(x, y, current)
+            > halfSectorAngle + AutoConstants.reefSectorHysteresis) {
+      current = targets.nearestSector(x, y);
+    }
+    this.targets = targets;
+    sector = current;
+    return current;
+  }
+
+  /** Forgets the selected sector, the next selection has no hysteresis. */
+  public void reset() {
+    targets = null;
+    sector = -1;
+  }
+}
@@ -0,0 +1,145 @@
+package frc.robot.util;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import frc.robot.Constants.FieldConstants.ReefPoses;
+import frc.robot.Constants.FieldConstants.ReefSlot;
+
+/**
+ * Every reef scoring pose for one alliance, indexed by sector, with a constant time nearest sector
+ * lookup.
+ *
+ * <p>The six sector middles sit on a circle around the reef center, 60 degrees apart, so the
+ * nearest middle is the one whose direction from the center is closest to the robot's. That is a
+ * single {@code atan2}, with no list or allocation. The poses are the same instances as in {@link
+ * ReefPoses}, and each target also has its approach pose, backed off along the target's heading.
+ */
+public final class ReefTargets {
+
+  /** A scoring position within a sector. */
+  public static enum Target {
+    MIDDLE,
+    LEFT,
+    RIGHT,
+    ALGAE
+  }
+
+  public static final double approachDistance = 0.25; // Meters, along the target's heading
+
+  public static final ReefTargets blue = new ReefTargets(Alliance.Blue);
+  public static final ReefTargets red = new ReefTargets(Alliance.Red);
+
+  private static final double sectorAngle = Math.PI / 3;
+
+  private final double centerX;
+  private final double centerY;
+  private final int[] sectorsByAngle = new int[6]; // Angle index from +x, counterclockwise
+  private final Pose2d[][] targets = new Pose2d[Target.values().length][6];
+  private final Pose2d[][] approaches = new Pose2d[Target.values().length][6];
+  private final boolean[] lowAlgae = new boolean[6];
+  private final double[] sectorAngles = new double[6]; // Direction of each middle from the center
+
+  private ReefTargets(Alliance alliance) {
+    ReefPoses[] sectors = ReefPoses.values();
+
+    double sumX = 0;
+    double sumY = 0;
+    for (int sector = 0; sector < 6; sector++) {
+      ReefSlot slot = alliance == Alliance.Red ? sectors[sector].red : sectors[sector].blue;
+      targets[Target.MIDDLE.ordinal()][sector] = slot.middle;
+      targets[Target.LEFT.ordinal()][sector] = slot.left;
+      targets[Target.RIGHT.ordinal()][sector] = slot.right;
+      targets[Target.ALGAE.ordinal()][sector] = slot.algae;
+      sumX += slot.middle.getX();
+      sumY += slot.middle.getY();
+
+      // Algae alternates between the L2 and L3 sides of the reef, mirrored between alliances
+      lowAlgae[sector] = (sector % 2 == 0) == (alliance == Alliance.Blue);
+    }
+    centerX = sumX / 6;
+    centerY = sumY / 6;
+
+    Transform2d approach = new Transform2d(approachDistance, 0, Rotation2d.kZero);
+    for (int sector = 0; sector < 6; sector++) {
+      Pose2d middle = targets[Target.MIDDLE.ordinal()][sector];
+      sectorsByAngle[angleIndex(middle.getX(), middle.getY())] = sector;
+      sectorAngles[sector] = Math.atan2(middle.getY() - centerY, middle.getX() - centerX);
+      for (Target target : Target.values()) {
+        approaches[target.ordinal()][sector] = targets[target.ordinal()][sector].plus(approach);
+      }
+    }
+  }
+
+  /**
+   * @return The targets of the alliance, blue if unknown
+   */
+  public static ReefTargets forAlliance(Alliance alliance) {
+    return alliance == Alliance.Red ? red : blue;
+  }
+
+  /**
+   * @return The index of the sector nearest the pose, in {@link ReefPoses} order
+   */
+  public int nearestSector(Pose2d pose) {
+    return nearestSector(pose.getX(), pose.getY());
+  }
+
+  /**
+   * @return The index of the sector nearest the point, in {@link ReefPoses} order
+   */
+  public int nearestSector(double x, double y) {
+    return sectorsByAngle[angleIndex(x, y)];
+  }
+
+  /**
+   * @return The angle in radians, around the reef center, between the point and the middle of the
+   *     sector. The point is in the sector when this is under 30 degrees.
+   */
+  public double angleToSector(double x, double y, int sector) {
+    double angle = Math.atan2(y - centerY, x - centerX);
+    return Math.abs(MathUtil.angleModulus(angle - sectorAngles[sector]));
+  }
+
+  /**
+   * @return The target pose in the sector
+   */
+  public Pose2d get(Target target, int sector) {
+    return targets[target.ordinal()][sector];
+  }
+
+  /**
+   * @return The target pose in the sector, backed off by {@link #approachDistance}
+   */
+  public Pose2d getApproach(Target target, int sector) {
+    return approaches[target.ordinal()][sector];
+  }
+
+  /**
+   * @return Whether the algae in the sector sits at L2, rather than L3
+   */
+  public boolean isLowAlgae(int sector) {
+    return lowAlgae[sector];
+  }
+
+  /**
+   * @return The center of the reef in x
+   */
+  public double getCenterX() {
+    return centerX;
+  }
+
+  /**
+   * @return The center of the reef in y
+   */
+  public double getCenterY() {
+    return centerY;
+  }
+
+  private int angleIndex(double x, double y) {
+    long index = Math.round(Math.atan2(y - centerY, x - centerX) / sectorAngle);
+    return (int) Math.floorMod(index, 6);
+  }
+}
@@ -0,0 +1,162 @@
+package frc.robot.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the cost of each robot loop while replaying a log, for {@code
+ * frc.robot.tools.ReplayBenchmark}.
+ *
+ * <p>Replay runs loops back to back, so the time between two calls to {@link #markLoop()} is one
+ * whole loop, including AdvantageKit reading the next cycle of the log and writing the outputs.
+ * Each loop's main thread CPU time, allocated bytes and GC time are recorded. AdvantageKit exits
+ * the JVM when the log ends, so the summary is written from a shutdown hook to the file named by
+ * the {@value #outputProperty} system property. Does nothing unless that property is set.
+ */
+public final class ReplayMetrics {
+
+  public static final String outputProperty = "frc.robot.replayMetrics";
+
+  /** The measured cost of one replay, serialized to JSON. */
+  public static class Summary {
+    public String log = "";
+    public int loops;
+    public double cpuP50Ms;
+    public double cpuP99Ms;
+    public double cpuMaxMs;
+    public double cpuTotalSeconds;
+    public double allocatedBytesPerLoop;
+    public double allocationRateMBPerCpuSecond;
+    public long gcCount;
+    public double gcTimeMs;
+    public double maxLoopGcTimeMs;
+  }
+
+  private static boolean enabled = false;
+  private static String log = "";
+  private static com.sun.management.ThreadMXBean threads;
+  private static List<GarbageCollectorMXBean> collectors;
+
+  private static long[] cpuNanos = new long[1 << 14];
+  private static long[] allocatedBytes = new long[1 << 14];
+  private static long[] gcMillis = new long[1 << 14];
+  private static int loops = 0;
+
+  private static long lastCpuNanos;
+  private static long lastAllocatedBytes;
+  private static long lastGcMillis;
+  private static long startGcCount;
+
+  private ReplayMetrics() {}
+
+  /**
+   * Starts measuring if {@value #outputProperty} is set. Call once before the first loop.
+   *
+   * @param logPath The log being replayed, recorded in the summary
+   */
+  public static void startIfRequested(String logPath) {
+    String output = System.getProperty(outputProperty);
+    if (output == null) {
+      return;
+    }
+    log = logPath;
+    threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    startGcCount = gcCount();
+    lastCpuNanos = -1;
+    enabled = true;
+    Runtime.getRuntime()
+        .addShutdownHook(new Thread(() -> write(new File(output)), "Replay metrics"));
+  }
+
+  /** Ends the previous loop and starts the next. Call at the start of every loop. */
+  public static void markLoop() {
+    if (!enabled) {
+      return;
+    }
+    long thread = Thread.currentThread().getId();
+    long cpu = threads.getThreadCpuTime(thread);
+    long allocated = threads.getThreadAllocatedBytes(thread);
+    long gc = gcMillis();
+    if (lastCpuNanos >= 0) {
+      if (loops == cpuNanos.length) {
+        cpuNanos = Arrays.copyOf(cpuNanos, loops * 2);
+        allocatedBytes = Arrays.copyOf(allocatedBytes, loops * 2);
+        gcMillis = Arrays.copyOf(gcMillis, loops * 2);
+      }
+      cpuNanos[loops] = cpu - lastCpuNanos;
+      allocatedBytes[loops] = allocated - lastAllocatedBytes;
+      gcMillis[loops] = gc - lastGcMillis;
+      loops++;
+    }
+    lastCpuNanos = cpu;
+    lastAllocatedBytes = allocated;
+    lastGcMillis = gc;
+  }
+
+  /**
+   * @return The summary of every loop so far
+   */
+  public static Summary summarize() {
+    Summary summary = new Summary();
+    summary.log = log;
+    summary.loops = loops;
+    if (loops == 0) {
+      return summary;
+    }
+
+    long[] sorted = Arrays.copyOf(cpuNanos, loops);
+    Arrays.sort(sorted);
+    long totalCpu = 0;
+    long totalAllocated = 0;
+    long totalGc = 0;
+    long maxGc = 0;
+    for (int i = 0; i < loops; i++) {
+      totalCpu += cpuNanos[i];
+      totalAllocated += allocatedBytes[i];
+      totalGc += gcMillis[i];
+      maxGc = Math.max(maxGc, gcMillis[i]);
+    }
+
+    summary.cpuP50Ms = sorted[(loops - 1) / 2] / 1e6;
+    summary.cpuP99Ms = sorted[(int) ((loops - 1) * 0.99)] / 1e6;
+    summary.cpuMaxMs = sorted[loops - 1] / 1e6;
+    summary.cpuTotalSeconds = totalCpu / 1e9;
+    summary.allocatedBytesPerLoop = (double) totalAllocated / loops;
+    summary.allocationRateMBPerCpuSecond =
+        summary.cpuTotalSeconds > 0 ? totalAllocated / 1e6 / summary.cpuTotalSeconds : 0;
+    summary.gcCount = gcCount() - startGcCount;
+    summary.gcTimeMs = totalGc;
+    summary.maxLoopGcTimeMs = maxGc;
+    return summary;
+  }
+
+  private static void write(File output) {
+    try {
+      new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(output, summarize());
+    } catch (IOException e) {
+      System.err.println("Failed to write replay metrics: " + e.getMessage());
+    }
+  }
+
+  private static long gcMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : collectors) {
+      total += Math.max(collector.getCollectionTime(), 0);
+    }
+    return total;
+  }
+
+  private static long gcCount() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : collectors) {
+      total += Math.max(collector.getCollectionCount(), 0);
+    }
+    return total;
+  }
+}
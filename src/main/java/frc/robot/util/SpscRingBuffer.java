@@ -0,0 +1,74 @@
+package frc.robot.util;
+
+/**
+ * Fixed capacity ring buffer of objects.
+ *
+ * <p>Safe for exactly one producer thread and one consumer thread without locking. New elements
+ * are dropped when the buffer is full.
+ */
+public class SpscRingBuffer<T> {
+
+  private final Object[] buffer;
+  private final int mask;
+
+  // Only written by the producer / consumer respectively, volatile to publish across threads
+  private volatile long writeIndex = 0;
+  private volatile long readIndex = 0;
+
+  /**
+   * @param minCapacity The minimum number of elements the buffer can hold, rounded up to the next
+   *     power of two
+   */
+  public SpscRingBuffer(int minCapacity) {
+    int capacity = Integer.highestOneBit(Math.max(minCapacity, 2) - 1) << 1;
+    buffer = new Object[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Adds an element to the buffer. Producer thread only.
+   *
+   * @return False if the buffer was full and the element was dropped
+   */
+  public boolean offer(T value) {
+    long write = writeIndex;
+    if (write - readIndex >= buffer.length) {
+      return false;
+    }
+    buffer[(int) (write & mask)] = value;
+    writeIndex = write + 1;
+    return true;
+  }
+
+  /**
+   * Removes the oldest element. Consumer thread only.
+   *
+   * @return The oldest element, or null if the buffer is empty
+   */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    long read = readIndex;
+    if (read == writeIndex) {
+      return null;
+    }
+    int index = (int) (read & mask);
+    T value = (T) buffer[index];
+    buffer[index] = null; // Don't keep consumed elements alive
+    readIndex = read + 1;
+    return value;
+  }
+
+  /**
+   * @return The number of elements waiting to be polled
+   */
+  public int size() {
+    return (int) (writeIndex - readIndex);
+  }
+
+  /**
+   * @return The maximum number of elements the buffer can hold
+   */
+  public int capacity() {
+    return buffer.length;
+  }
+}
@@ -0,0 +1,68 @@
+package frc.robot.util;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Transform3d;
+
+/**
+ * AprilTag poses indexed by tag ID, precomputed from a field layout.
+ *
+ * <p>{@link AprilTagFieldLayout#getTagPose} searches the layout and allocates an {@code Optional}
+ * and a new pose on every call. This table is built once, so lookups are an array index and never
+ * allocate. Missing IDs return null.
+ */
+public class TagPoseTable {
+
+  private final Pose3d[] poses;
+  private final Transform3d[] fieldToTag;
+  private final Transform3d[] tagToField;
+
+  /**
+   * @param layout The layout to copy, with its origin already set
+   */
+  public TagPoseTable(AprilTagFieldLayout layout) {
+    int maxId = 0;
+    for (AprilTag tag : layout.getTags()) {
+      maxId = Math.max(maxId, tag.ID);
+    }
+    poses = new Pose3d[maxId + 1];
+    fieldToTag = new Transform3d[maxId + 1];
+    tagToField = new Transform3d[maxId + 1];
+
+    for (AprilTag tag : layout.getTags()) {
+      Pose3d pose = layout.getTagPose(tag.ID).get();
+      poses[tag.ID] = pose;
+      fieldToTag[tag.ID] = new Transform3d(pose.getTranslation(), pose.getRotation());
+      tagToField[tag.ID] = fieldToTag[tag.ID].inverse();
+    }
+  }
+
+  /**
+   * @return Whether the layout has a tag with this ID
+   */
+  public boolean contains(int id) {
+    return id >= 0 && id < poses.length && poses[id] != null;
+  }
+
+  /**
+   * @return The field relative pose of the tag, or null if it is not in the layout
+   */
+  public Pose3d getPose(int id) {
+    return contains(id) ? poses[id] : null;
+  }
+
+  /**
+   * @return The transform from the field origin to the tag, or null if it is not in the layout
+   */
+  public Transform3d getFieldToTag(int id) {
+    return contains(id) ? fieldToTag[id] : null;
+  }
+
+  /**
+   * @return The transform from the tag to the field origin, or null if it is not in the layout
+   */
+  public Transform3d getTagToField(int id) {
+    return contains(id) ? tagToField[id] : null;
+  }
+}
@@ -0,0 +1,144 @@
+package frc.robot.util;
+
+import java.util.Arrays;
+
+/**
+ * The vision measurements accepted in one loop, from every camera, stored as primitives so the
+ * batch can be refilled every loop without allocating.
+ *
+ * <p>Each measurement is a 2D robot pose, its timestamp and its standard deviations in x, y and
+ * heading.
+ */
+public class VisionMeasurementBatch {
+
+  private double[] timestamps;
+  private double[] xs;
+  private double[] ys;
+  private double[] thetas;
+  private double[] xStdDevs;
+  private double[] yStdDevs;
+  private double[] thetaStdDevs;
+  private int size = 0;
+
+  /**
+   * @param initialCapacity The number of measurements to hold before growing
+   */
+  public VisionMeasurementBatch(int initialCapacity) {
+    timestamps = new double[initialCapacity];
+    xs = new double[initialCapacity];
+    ys = new double[initialCapacity];
+    thetas = new double[initialCapacity];
+    xStdDevs = new double[initialCapacity];
+    yStdDevs = new double[initialCapacity];
+    thetaStdDevs = new double[initialCapacity];
+  }
+
+  /** Removes all measurements. */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Adds a measurement.
+   *
+   * @param timestamp The measurement time in seconds
+   * @param x The measured robot x in meters
+   * @param y The measured robot y in meters
+   * @param theta The measured robot heading in radians
+   * @param xStdDev The x standard deviation in meters
+   * @param yStdDev The y standard deviation in meters
+   * @param thetaStdDev The heading standard deviation in radians
+   */
+  public void add(
+      double timestamp,
+      double x,
+      double y,
+      double theta,
+      double xStdDev,
+      double yStdDev,
+      double thetaStdDev) {
+    if (size == timestamps.length) { // Only grows past the largest batch seen so far
+      int capacity = Math.max(2 * size, 4);
+      timestamps = Arrays.copyOf(timestamps, capacity);
+      xs = Arrays.copyOf(xs, capacity);
+      ys = Arrays.copyOf(ys, capacity);
+      thetas = Arrays.copyOf(thetas, capacity);
+      xStdDevs = Arrays.copyOf(xStdDevs, capacity);
+      yStdDevs = Arrays.copyOf(yStdDevs, capacity);
+      thetaStdDevs = Arrays.copyOf(thetaStdDevs, capacity);
+    }
+    timestamps[size] = timestamp;
+    xs[size] = x;
+    ys[size] = y;
+    thetas[size] = theta;
+    xStdDevs[size] = xStdDev;
+    yStdDevs[size] = yStdDev;
+    thetaStdDevs[size] = thetaStdDev;
+    size++;
+  }
+
+  /**
+   * Sorts the measurements oldest first. Uses an insertion sort, batches are small and each
+   * camera's measurements already arrive in order.
+   */
+  public void sortByTimestamp() {
+    for (int i = 1; i < size; i++) {
+      int j = i;
+      while (j > 0 && timestamps[j - 1] > timestamps[j]) {
+        swap(j - 1, j);
+        j--;
+      }
+    }
+  }
+
+  private void swap(int a, int b) {
+    swap(timestamps, a, b);
+    swap(xs, a, b);
+    swap(ys, a, b);
+    swap(thetas, a, b);
+    swap(xStdDevs, a, b);
+    swap(yStdDevs, a, b);
+    swap(thetaStdDevs, a, b);
+  }
+
+  private static void swap(double[] array, int a, int b) {
+    double temp = array[a];
+    array[a] = array[b];
+    array[b] = temp;
+  }
+
+  /**
+   * @return The number of measurements
+   */
+  public int size() {
+    return size;
+  }
+
+  public double getTimestamp(int index) {
+    return timestamps[index];
+  }
+
+  public double getX(int index) {
+    return xs[index];
+  }
+
+  public double getY(int index) {
+    return ys[index];
+  }
+
+  public double getTheta(int index) {
+    return thetas[index];
+  }
+
+  public double getXStdDev(int index) {
+    return xStdDevs[index];
+  }
+
+  public double getYStdDev(int index) {
+    return yStdDevs[index];
+  }
+
+  public double getThetaStdDev(int index) {
+    return thetaStdDevs[index];
+  }
+}
@@ -0,0 +1,120 @@
+package frc.robot.subsystems.drivebase;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Checks that {@link OdometryFrameBuffer} hands frames from one producer thread to one consumer
+ * thread without tearing them, and counts every frame it drops.
+ */
+class OdometryFrameBufferTest {
+
+  private static final int width = 9; // Yaw and four modules' drive and turn
+  private static final int capacity = 16;
+  private static final int frameCount = 2_000_000;
+
+  /** Fills a frame so every value can be checked against the timestamp. */
+  private static void fill(double[] values, long frame) {
+    for (int i = 0; i < width; i++) {
+      values[i] = frame * 16.0 + i;
+    }
+  }
+
+  /** The frames drained so far, checked as they arrive. */
+  private static class Consumer {
+    final double[] timestamps;
+    final double[][] values = new double[width][];
+    long received = 0;
+    double lastTimestamp = -1;
+
+    Consumer(int drainSize) {
+      timestamps = new double[drainSize];
+      for (int i = 0; i < width; i++) {
+        values[i] = new double[drainSize];
+      }
+    }
+
+    int drain(OdometryFrameBuffer buffer) {
+      int count = buffer.drainTo(timestamps, values);
+      for (int frame = 0; frame < count; frame++) {
+        double timestamp = timestamps[frame];
+        assertTrue(timestamp > lastTimestamp, "Frame " + timestamp + " out of order");
+        for (int i = 0; i < width; i++) {
+          assertEquals(timestamp * 16.0 + i, values[i][frame], "Torn frame " + timestamp);
+        }
+        lastTimestamp = timestamp;
+      }
+      received += count;
+      return count;
+    }
+  }
+
+  @Test
+  void dropsOldestFramesWhenFull() {
+    OdometryFrameBuffer buffer = new OdometryFrameBuffer(width, capacity);
+    double[] values = new double[width];
+    int published = capacity + 5;
+    for (int frame = 0; frame < published; frame++) {
+      fill(values, frame);
+      buffer.publish(frame, values);
+    }
+
+    Consumer consumer = new Consumer(capacity);
+    assertEquals(capacity, consumer.drain(buffer));
+    assertEquals(5, buffer.getDroppedFrames());
+    assertEquals(published - 1, consumer.lastTimestamp); // The newest frames were kept
+  }
+
+  @Test
+  void drainsInChunksWithoutDropping() {
+    OdometryFrameBuffer buffer = new OdometryFrameBuffer(width, capacity);
+    double[] values = new double[width];
+    for (int frame = 0; frame < capacity; frame++) {
+      fill(values, frame);
+      buffer.publish(frame, values);
+    }
+
+    Consumer consumer = new Consumer(5);
+    while (consumer.drain(buffer) > 0) {}
+    assertEquals(capacity, consumer.received);
+    assertEquals(0, buffer.getDroppedFrames());
+  }
+
+  @Test
+  @Timeout(60)
+  void concurrentFramesAreWholeAndAccountedFor() throws InterruptedException {
+    OdometryFrameBuffer buffer = new OdometryFrameBuffer(width, capacity);
+    AtomicBoolean done = new AtomicBoolean(false);
+    Thread producer =
+        new Thread(
+            () -> {
+              double[] values = new double[width];
+              for (int frame = 0; frame < frameCount; frame++) {
+                fill(values, frame);
+                buffer.publish(frame, values);
+              }
+              done.set(true);
+            },
+            "Odometry producer");
+    producer.start();
+
+    // Drain in small chunks, and now and then fall behind so frames are overwritten mid-copy
+    Consumer consumer = new Consumer(4);
+    long drains = 0;
+    while (!done.get()) {
+      consumer.drain(buffer);
+      if (++drains % 1000 == 0) {
+        Thread.sleep(1);
+      }
+    }
+    producer.join();
+    while (consumer.drain(buffer) > 0) {}
+
+    assertTrue(buffer.getDroppedFrames() > 0, "The consumer never fell behind");
+    assertEquals(frameCount, consumer.received + buffer.getDroppedFrames());
+  }
+}
@@ -0,0 +1,277 @@
+package frc.robot.subsystems.drivebase;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.numbers.N3;
+import frc.robot.util.VisionMeasurementBatch;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Plays the same odometry and vision inputs through {@link SwervePoseEstimator} and WPILib's
+ * {@link SwerveDrivePoseEstimator} and checks that they agree.
+ */
+class SwervePoseEstimatorTest {
+
+  private static final double period = 0.004; // 250Hz odometry
+  private static final double tolerance = 1e-6;
+
+  // Off-center so the forward kinematics are not the symmetric special case
+  private static final Translation2d[] moduleTranslations = {
+    new Translation2d(0.32, 0.27),
+    new Translation2d(0.32, -0.25),
+    new Translation2d(-0.26, 0.27),
+    new Translation2d(-0.26, -0.25)
+  };
+  private static final SwerveDriveKinematics kinematics =
+      new SwerveDriveKinematics(moduleTranslations);
+
+  private final Matrix<N3, N1> stateStdDevs = VecBuilder.fill(0.6, 0.6, 0.07);
+  private final Matrix<N3, N1> visionStdDevs = VecBuilder.fill(2, 2, 1);
+
+  private final Random random = new Random(4201);
+  private final double[] distances = new double[moduleTranslations.length];
+  private SwerveModulePosition[] positions = new SwerveModulePosition[moduleTranslations.length];
+  private double yaw = 0.3;
+  private int sample = 0;
+
+  private SwervePoseEstimator estimator;
+  private SwerveDrivePoseEstimator wpilibEstimator;
+
+  @BeforeEach
+  void setup() {
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = new SwerveModulePosition(0.0, Rotation2d.kZero);
+    }
+    Pose2d initialPose = new Pose2d(2.0, 3.0, Rotation2d.fromDegrees(40));
+    estimator =
+        new SwervePoseEstimator(
+            moduleTranslations,
+            Rotation2d.fromRadians(yaw),
+            positions,
+            initialPose,
+            stateStdDevs,
+            visionStdDevs);
+    wpilibEstimator =
+        new SwerveDrivePoseEstimator(
+            kinematics,
+            Rotation2d.fromRadians(yaw),
+            positions,
+            initialPose,
+            stateStdDevs,
+            visionStdDevs);
+  }
+
+  private double time() {
+    return sample * period;
+  }
+
+  /**
+   * Advances both estimators by one odometry sample of a robot driving, strafing and turning, with
+   * wheel slip so the modules and the gyro disagree.
+   */
+  private void step() {
+    sample++;
+    double t = time();
+    ChassisSpeeds speeds =
+        new ChassisSpeeds(
+            2.5 * Math.sin(0.9 * t), 1.5 * Math.cos(0.7 * t), 1.2 + 2.0 * Math.sin(t));
+    SwerveModuleState[] states = kinematics.toSwerveModuleStates(speeds);
+    positions = new SwerveModulePosition[states.length];
+    for (int i = 0; i < states.length; i++) {
+      distances[i] +=
+          states[i].speedMetersPerSecond * period * (1.0 + 0.05 * random.nextGaussian());
+      positions[i] = new SwerveModulePosition(distances[i], states[i].angle);
+    }
+    yaw += speeds.omegaRadiansPerSecond * period;
+
+    // Alternate between the object and primitive updates so both are checked
+    Rotation2d gyroAngle = Rotation2d.fromRadians(yaw);
+    if (sample % 2 == 0) {
+      estimator.updateWithTime(t, gyroAngle, positions);
+    } else {
+      double[] turnAngles = new double[positions.length];
+      for (int i = 0; i < positions.length; i++) {
+        turnAngles[i] = positions[i].angle.getRadians();
+      }
+      estimator.updateWithTime(t, yaw, distances, turnAngles);
+    }
+    wpilibEstimator.updateWithTime(t, gyroAngle, positions);
+  }
+
+  /** A vision pose near the current estimate. */
+  private Pose2d visionPose() {
+    return wpilibEstimator
+        .getEstimatedPosition()
+        .plus(
+            new Transform2d(
+                0.3 * random.nextGaussian(),
+                0.3 * random.nextGaussian(),
+                Rotation2d.fromRadians(0.2 * random.nextGaussian())));
+  }
+
+  private Matrix<N3, N1> randomStdDevs() {
+    return VecBuilder.fill(
+        0.1 + random.nextDouble(), 0.1 + random.nextDouble(), 0.05 + random.nextDouble());
+  }
+
+  /** Adds the same measurement to both estimators. */
+  private void addVision(double latency) {
+    Pose2d pose = visionPose();
+    Matrix<N3, N1> stdDevs = randomStdDevs();
+    estimator.addVisionMeasurement(pose, time() - latency, stdDevs);
+    wpilibEstimator.addVisionMeasurement(pose, time() - latency, stdDevs);
+  }
+
+  private void assertPosesMatch(Pose2d expected, Pose2d actual, String context) {
+    assertEquals(expected.getX(), actual.getX(), tolerance, context + " x");
+    assertEquals(expected.getY(), actual.getY(), tolerance, context + " y");
+    assertEquals(
+        0.0, expected.getRotation().minus(actual.getRotation()).getRadians(), tolerance, context);
+  }
+
+  private void assertEstimatesMatch() {
+    assertPosesMatch(
+        wpilibEstimator.getEstimatedPosition(),
+        estimator.getEstimatedPosition(),
+        "Sample " + sample);
+  }
+
+  @Test
+  void odometryMatches() {
+    for (int i = 0; i < 2000; i++) {
+      step();
+      assertEstimatesMatch();
+    }
+  }
+
+  @Test
+  void lateVisionMatches() {
+    for (int i = 0; i < 2000; i++) {
+      step();
+      if (i % 5 == 0) {
+        addVision(0.02 + 0.13 * random.nextDouble());
+      }
+      assertEstimatesMatch();
+    }
+  }
+
+  @Test
+  void outOfOrderVisionMatches() {
+    for (int i = 0; i < 2000; i++) {
+      step();
+      switch (i % 40) {
+        case 0 -> {
+          // A slower camera's older measurement arrives after a newer one
+          addVision(0.03);
+          addVision(0.12);
+        }
+        case 10 -> {
+          // Two measurements at the same time
+          Pose2d pose = visionPose();
+          double timestamp = time() - 0.05;
+          estimator.addVisionMeasurement(pose, timestamp, visionStdDevs);
+          wpilibEstimator.addVisionMeasurement(pose, timestamp, visionStdDevs);
+          addVision(0.05);
+        }
+        case 20 -> addVision(1.0); // Near the end of the history
+        case 30 -> addVision(2.0); // Older than the history, ignored
+        case 35 -> addVision(-0.01); // Newer than the newest odometry sample
+        default -> {}
+      }
+      assertEstimatesMatch();
+    }
+  }
+
+  @Test
+  void visionBatchMatches() {
+    VisionMeasurementBatch batch = new VisionMeasurementBatch(4);
+    for (int i = 0; i < 2000; i++) {
+      step();
+      if (i % 10 == 0) {
+        batch.clear();
+        for (int j = 0; j < 3; j++) {
+          Pose2d pose = visionPose();
+          Matrix<N3, N1> stdDevs = randomStdDevs();
+          batch.add(
+              time() - 0.02 - 0.1 * random.nextDouble(),
+              pose.getX(),
+              pose.getY(),
+              pose.getRotation().getRadians(),
+              stdDevs.get(0, 0),
+              stdDevs.get(1, 0),
+              stdDevs.get(2, 0));
+        }
+        batch.sortByTimestamp();
+        estimator.addVisionMeasurements(batch);
+        for (int j = 0; j < batch.size(); j++) {
+          wpilibEstimator.addVisionMeasurement(
+              new Pose2d(batch.getX(j), batch.getY(j), Rotation2d.fromRadians(batch.getTheta(j))),
+              batch.getTimestamp(j),
+              VecBuilder.fill(batch.getXStdDev(j), batch.getYStdDev(j), batch.getThetaStdDev(j)));
+        }
+      }
+      assertEstimatesMatch();
+    }
+  }
+
+  @Test
+  void samplePoseMatches() {
+    double[] pose = new double[3];
+    for (int i = 0; i < 1000; i++) {
+      step();
+      if (i % 5 == 0) {
+        addVision(0.02 + 0.13 * random.nextDouble());
+      }
+    }
+
+    for (int i = 0; i < 200; i++) {
+      // Between samples, on samples and past the newest sample
+      double timestamp = time() - 1.4 + i * 0.0073;
+      assertTrue(estimator.samplePose(timestamp, pose));
+      assertPosesMatch(
+          wpilibEstimator.sampleAt(timestamp).orElseThrow(),
+          new Pose2d(pose[0], pose[1], Rotation2d.fromRadians(pose[2])),
+          "Time " + timestamp);
+    }
+    assertFalse(estimator.samplePose(time() - 2.0, pose));
+  }
+
+  @Test
+  void resetMatches() {
+    for (int i = 0; i < 500; i++) {
+      step();
+      if (i % 5 == 0) {
+        addVision(0.05);
+      }
+    }
+
+    Pose2d resetPose = new Pose2d(5.0, 1.0, Rotation2d.fromDegrees(-120));
+    estimator.resetPosition(Rotation2d.fromRadians(yaw), positions, resetPose);
+    wpilibEstimator.resetPosition(Rotation2d.fromRadians(yaw), positions, resetPose);
+    assertEstimatesMatch();
+
+    for (int i = 0; i < 500; i++) {
+      step();
+      if (i % 5 == 0) {
+        addVision(0.05);
+      }
+      assertEstimatesMatch();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package frc.robot.subsystems.vision;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.subsystems.vision.ApriltagCameraIO.PoseObservation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Checks {@link OdometryConsistencyFilter} against an estimate that stays at one pose. */
+class OdometryConsistencyFilterTest {
+
+  private static final double estimateX = 2.0;
+  private static final double estimateY = 3.0;
+  private static final double estimateHeading = 0.5;
+
+  // A confident observation, as from two close tags
+  private static final double linearStdDev = 0.1;
+  private static final double angularStdDev = 0.05;
+
+  private OdometryConsistencyFilter filter;
+
+  @BeforeEach
+  void setup() {
+    filter =
+        new OdometryConsistencyFilter(
+            (timestamp, poseOut) -> {
+              poseOut[0] = estimateX;
+              poseOut[1] = estimateY;
+              poseOut[2] = estimateHeading;
+              return true;
+            },
+            ChassisSpeeds::new,
+            () -> 0,
+            2);
+  }
+
+  /** Observes the estimate pose offset by the distance along x. */
+  private boolean accept(int camera, double timestamp, double offset) {
+    PoseObservation observation =
+        new PoseObservation(
+            timestamp,
+            new Pose3d(
+                new Pose2d(estimateX + offset, estimateY, Rotation2d.fromRadians(estimateHeading))),
+            0.0,
+            2,
+            1.0);
+    return filter.accept(camera, observation, linearStdDev, angularStdDev);
+  }
+
+  @Test
+  void acceptsAnythingBeforeTheFirstCorrection() {
+    assertTrue(accept(0, 1.0, 5.0));
+  }
+
+  @Test
+  void rejectsWrongAndAcceptsConsistent() {
+    assertTrue(accept(0, 1.0, 0.0));
+    assertFalse(accept(0, 1.5, 2.0));
+    assertTrue(accept(0, 1.5, 0.05));
+    assertFalse(accept(1, 1.6, -2.0));
+  }
+
+  @Test
+  void gateWidensWithTimeSinceCorrection() {
+    assertTrue(accept(0, 0.0, 0.0));
+    assertFalse(accept(0, 0.5, 1.0));
+    assertTrue(accept(0, 100.0, 1.0)); // Odometry has drifted for long enough to be this far off
+  }
+
+  @Test
+  void rejectionStreaksArePerCamera() {
+    assertTrue(accept(0, 1.0, 0.0));
+    double timestamp = 1.0;
+    for (int i = 0; i < VisionConstants.maxConsecutiveRejections; i++) {
+      timestamp += 0.01;
+      assertFalse(accept(0, timestamp, 2.0));
+    }
+
+    // The other camera's wrong observation is still rejected, this one's streak lets it through
+    assertFalse(accept(1, timestamp, 2.0));
+    assertTrue(accept(0, timestamp, 2.0));
+  }
+}
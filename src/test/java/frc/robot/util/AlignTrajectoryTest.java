@@ -0,0 +1,103 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.trajectory.TrapezoidProfile.Constraints;
+import frc.robot.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Checks the trajectories {@link AlignTrajectory} generates against the drivebase's limits. */
+class AlignTrajectoryTest {
+
+  private static final double sampleStep = 0.001; // Seconds
+  private static final double tolerance = 1e-9;
+
+  private static final Pose2d goal = new Pose2d(3.0, 2.0, Rotation2d.fromDegrees(90));
+
+  // Loose command limits, so only the drivebase's apply
+  private static final Constraints looseConstraints = new Constraints(100.0, 100.0);
+
+  private AlignTrajectory.Trajectory trajectory;
+
+  @BeforeEach
+  void setup() {
+    trajectory = new AlignTrajectory.Trajectory(looseConstraints, looseConstraints);
+    trajectory.generate(1.0, 1.0, 0.0, 0.0, 0.0, 0.0, goal);
+  }
+
+  /** Samples the whole trajectory and checks every module's speed at each setpoint. */
+  private void assertWithinLimits() {
+    for (double t = 0.0; t <= trajectory.getDuration() + sampleStep; t += sampleStep) {
+      trajectory.sample(t);
+      double cos = Math.cos(trajectory.setpointHeading);
+      double sin = Math.sin(trajectory.setpointHeading);
+      for (Translation2d module : Constants.Swerve.moduleTranslations) {
+        // Field relative module velocity, the robot's plus the rotation about its center
+        double offsetX = cos * module.getX() - sin * module.getY();
+        double offsetY = sin * module.getX() + cos * module.getY();
+        double speed =
+            Math.hypot(
+                trajectory.setpointVx - trajectory.setpointOmega * offsetY,
+                trajectory.setpointVy + trajectory.setpointOmega * offsetX);
+        assertTrue(
+            speed <= Constants.Swerve.maxLinearSpeed + tolerance,
+            "Module speed " + speed + " at " + t);
+      }
+      assertTrue(
+          Math.abs(trajectory.setpointOmega) <= Constants.Swerve.maxAngularSpeed + tolerance,
+          "Angular speed " + trajectory.setpointOmega + " at " + t);
+    }
+  }
+
+  private void assertEndsAt(Pose2d pose) {
+    trajectory.sample(trajectory.getDuration());
+    assertEquals(pose.getX(), trajectory.setpointX, 1e-6);
+    assertEquals(pose.getY(), trajectory.setpointY, 1e-6);
+    assertEquals(
+        0.0,
+        Rotation2d.fromRadians(trajectory.setpointHeading).minus(pose.getRotation()).getRadians(),
+        1e-6);
+  }
+
+  @Test
+  void modulesStayWithinSpeedLimit() {
+    assertWithinLimits();
+  }
+
+  @Test
+  void translationAndRotationFinishTogether() {
+    assertEquals(trajectory.getTranslationTime(), trajectory.getRotationTime(), 1e-3);
+    assertEndsAt(goal);
+  }
+
+  @Test
+  void regenerationStartsFromLastSetpoint() {
+    trajectory.sample(0.4);
+    double x = trajectory.setpointX;
+    double y = trajectory.setpointY;
+    double heading = trajectory.setpointHeading;
+
+    // The target moved while driving
+    Pose2d movedGoal = new Pose2d(3.1, 1.9, Rotation2d.fromDegrees(95));
+    trajectory.generate(
+        x,
+        y,
+        heading,
+        trajectory.setpointVx,
+        trajectory.setpointVy,
+        trajectory.setpointOmega,
+        movedGoal);
+
+    trajectory.sample(0.0);
+    assertEquals(x, trajectory.setpointX, tolerance);
+    assertEquals(y, trajectory.setpointY, tolerance);
+    assertEquals(heading, trajectory.setpointHeading, tolerance);
+    assertWithinLimits();
+    assertEndsAt(movedGoal);
+  }
+}
@@ -0,0 +1,130 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Checks that {@link SpscRingBuffer} hands elements from one producer thread to one consumer
+ * thread in order and fully written, and that every element is either delivered or refused.
+ */
+class SpscRingBufferTest {
+
+  private static final int capacity = 16;
+  private static final int elementCount = 1_000_000;
+
+  /** An element written field by field before it is offered, so a torn handoff shows. */
+  private static class Element {
+    long sequence;
+    long check;
+
+    Element(long sequence) {
+      this.sequence = sequence;
+      this.check = ~sequence;
+    }
+  }
+
+  /** The elements polled so far, checked as they arrive. */
+  private static class Consumer {
+    long received = 0;
+    long lastSequence = -1;
+
+    boolean poll(SpscRingBuffer<Element> buffer) {
+      Element element = buffer.poll();
+      if (element == null) {
+        return false;
+      }
+      assertEquals(~element.sequence, element.check, "Torn element " + element.sequence);
+      assertTrue(element.sequence > lastSequence, "Element " + element.sequence + " out of order");
+      lastSequence = element.sequence;
+      received++;
+      return true;
+    }
+  }
+
+  @Test
+  void refusesElementsWhenFull() {
+    SpscRingBuffer<Element> buffer = new SpscRingBuffer<>(capacity);
+    for (int i = 0; i < capacity; i++) {
+      assertTrue(buffer.offer(new Element(i)));
+    }
+    assertFalse(buffer.offer(new Element(capacity)));
+    assertEquals(capacity, buffer.size());
+
+    Consumer consumer = new Consumer();
+    while (consumer.poll(buffer)) {}
+    assertEquals(capacity, consumer.received);
+    assertEquals(capacity - 1, consumer.lastSequence); // The oldest elements were kept
+    assertNull(buffer.poll());
+  }
+
+  @Test
+  @Timeout(60)
+  void deliversEveryElementInOrder() throws InterruptedException {
+    SpscRingBuffer<Element> buffer = new SpscRingBuffer<>(capacity);
+    Thread producer =
+        new Thread(
+            () -> {
+              for (int i = 0; i < elementCount; i++) {
+                Element element = new Element(i);
+                while (!buffer.offer(element)) {
+                  Thread.onSpinWait();
+                }
+              }
+            },
+            "Ring producer");
+    producer.start();
+
+    Consumer consumer = new Consumer();
+    while (consumer.received < elementCount) {
+      if (!consumer.poll(buffer)) {
+        Thread.onSpinWait();
+      }
+    }
+    producer.join();
+
+    assertEquals(elementCount - 1, consumer.lastSequence);
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  @Timeout(60)
+  void concurrentElementsAreWholeAndAccountedFor() throws InterruptedException {
+    SpscRingBuffer<Element> buffer = new SpscRingBuffer<>(capacity);
+    AtomicBoolean done = new AtomicBoolean(false);
+    AtomicLong refused = new AtomicLong();
+    Thread producer =
+        new Thread(
+            () -> {
+              for (int i = 0; i < elementCount; i++) {
+                if (!buffer.offer(new Element(i))) {
+                  refused.incrementAndGet();
+                }
+              }
+              done.set(true);
+            },
+            "Ring producer");
+    producer.start();
+
+    // Now and then fall behind so the buffer fills
+    Consumer consumer = new Consumer();
+    long polls = 0;
+    while (!done.get()) {
+      consumer.poll(buffer);
+      if (++polls % 1000 == 0) {
+        Thread.sleep(1);
+      }
+    }
+    producer.join();
+    while (consumer.poll(buffer)) {}
+
+    assertTrue(refused.get() > 0, "The consumer never fell behind");
+    assertEquals(elementCount, consumer.received + refused.get());
+  }
+}